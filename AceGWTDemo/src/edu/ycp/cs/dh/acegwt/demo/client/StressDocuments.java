@@ -0,0 +1,119 @@
+package edu.ycp.cs.dh.acegwt.demo.client;
+
+import com.google.gwt.user.client.Random;
+
+/**
+ * Generates the documents edited by the stress test.
+ */
+final class StressDocuments {
+    /**
+     * Words for the generated text. Some are misspelled, or in the negative dictionary, so the spell checker has
+     * something to mark.
+     */
+    private static final String[] WORDS = {
+            "the", "server", "configuration", "file", "is", "in", "directory", "and", "user", "can", "start", "service",
+            "with", "following", "command", "to", "deploy", "application", "cluster", "node", "security", "domain",
+            "recieve", "seperate", "occured", "basically", "can't", "bootloader", "in order to"
+    };
+
+    /**
+     * The tag names in the stub tag database, and the IDs of the topics they link to
+     */
+    static final String[] TAGS = {"JBoss", "Seam", "Hibernate", "Infinispan", "HornetQ"};
+    static final int FIRST_TOPIC_ID = 1000;
+
+    private static final String[] CONDITIONS = {"default", "beta", "enterprise", "community"};
+
+    private StressDocuments() {
+
+    }
+
+    /**
+     * @param lines The number of lines in the document
+     * @return A DocBook chapter with inline markup, entities, tag database names and conditional elements
+     */
+    static String docBook(final int lines) {
+        final StringBuilder document = new StringBuilder();
+        document.append("<chapter id=\"chap-Stress\">\n");
+        for (int line = 1; line < lines - 1; ++line) {
+            if (line % 20 == 1) {
+                document.append("\t<section id=\"sect-Stress-").append(line).append("\">\n");
+            } else if (line % 20 == 0) {
+                document.append("\t</section>\n");
+            } else if (line % 7 == 0) {
+                document.append("\t\t<para condition=\"").append(pick(CONDITIONS)).append("\">")
+                        .append(sentence(8)).append("</para>\n");
+            } else if (line % 5 == 0) {
+                document.append("\t\t<para><emphasis>").append(pick(TAGS)).append("</emphasis> &PRODUCT; ")
+                        .append(sentence(6)).append(" <xref linkend=\"sect-Stress-1\" /></para>\n");
+            } else {
+                document.append("\t\t<para>").append(sentence(12)).append("</para>\n");
+            }
+        }
+        document.append("</chapter>");
+        return document.toString();
+    }
+
+    /**
+     * @param lines The number of lines in the document
+     * @return A content specification, with topic IDs for the context menu to look up
+     */
+    static String contentSpec(final int lines) {
+        final StringBuilder document = new StringBuilder();
+        document.append("Title = Stress Test Guide\n");
+        document.append("Product = PressGang\n");
+        document.append("Version = 1.0\n");
+        document.append("Brand = JBoss\n");
+        document.append("Copyright Holder = Red Hat, Inc\n");
+        document.append("\n");
+        for (int line = 6, chapter = 0, section = 0; line < lines; ++line) {
+            if (line % 50 == 6) {
+                ++chapter;
+                section = 0;
+                document.append("Chapter: ").append(sentence(3)).append('\n');
+            } else if (line % 10 == 0) {
+                ++section;
+                document.append("  Section: ").append(chapter).append('.').append(section).append(' ')
+                        .append(pick(TAGS)).append('\n');
+            } else {
+                document.append("    ").append(sentence(4)).append(" [")
+                        .append(FIRST_TOPIC_ID + Random.nextInt(TAGS.length * 10)).append("]\n");
+            }
+        }
+        return document.toString();
+    }
+
+    /**
+     * @return Text to type, one character at a time
+     */
+    static String burst() {
+        return " " + sentence(4);
+    }
+
+    /**
+     * @param lines The number of lines to paste
+     * @return Text to paste
+     */
+    static String paste(final int lines) {
+        final StringBuilder text = new StringBuilder();
+        for (int line = 0; line < lines; ++line) {
+            text.append("\t\t<para>").append(sentence(12)).append("</para>\n");
+        }
+        return text.toString();
+    }
+
+    private static String sentence(final int words) {
+        final StringBuilder sentence = new StringBuilder();
+        for (int word = 0; word < words; ++word) {
+            if (word != 0) {
+                sentence.append(' ');
+            }
+            sentence.append(pick(WORDS));
+        }
+        return sentence.toString();
+    }
+
+    private static String pick(final String[] values) {
+        return values[Random.nextInt(values.length)];
+    }
+}
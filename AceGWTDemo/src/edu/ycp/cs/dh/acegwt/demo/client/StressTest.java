@@ -0,0 +1,279 @@
+package edu.ycp.cs.dh.acegwt.demo.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gwt.core.client.EntryPoint;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.logical.shared.ValueChangeEvent;
+import com.google.gwt.event.logical.shared.ValueChangeHandler;
+import com.google.gwt.json.client.JSONNumber;
+import com.google.gwt.user.client.Random;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.ui.Button;
+import com.google.gwt.user.client.ui.CheckBox;
+import com.google.gwt.user.client.ui.FlowPanel;
+import com.google.gwt.user.client.ui.Grid;
+import com.google.gwt.user.client.ui.HorizontalPanel;
+import com.google.gwt.user.client.ui.Label;
+import com.google.gwt.user.client.ui.ListBox;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.google.gwt.user.client.ui.TextBox;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditor;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorData;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorMode;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorTheme;
+import edu.ycp.cs.dh.acegwt.client.ace.AceWorkers;
+import edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB;
+
+/**
+ * Creates a number of editors with spell checking, tag matching, spec matching and conditional checking enabled, and
+ * edits them with typing bursts and pastes while displaying their metrics.
+ *
+ * The context menu REST calls go to the StubRestServlet, and the tag matching and spec matching workers are the stubs in
+ * war/javascript, so no PressGang server is needed. Conditional checking uses the module's built-in worker, so the
+ * incremental updates are measured.
+ */
+public class StressTest implements EntryPoint {
+    private static final String[] PASSES = {
+            AceEditorMetrics.SPELLING, AceEditorMetrics.TAGS, AceEditorMetrics.SPEC, AceEditorMetrics.CONDITIONAL
+    };
+    private static final String[] COLUMNS = {
+            "Editor", "Pass", "Requests", "Round trip p50", "Round trip p95", "Marker apply p95",
+            "Keystroke to marker p95", "Markers alive"
+    };
+    /**
+     * The delay between typed characters
+     */
+    private static final int TYPING_INTERVAL = 30;
+    /**
+     * The number of typing intervals to wait between bursts
+     */
+    private static final int TYPING_PAUSE = 30;
+    private static final int PASTE_LINES = 200;
+    private static final String CONDITION = "default|beta";
+    private static final List<String> CONDITION_PROFILES = Arrays.asList("default|enterprise", "default|community");
+
+    private final TextBox editorCount = new TextBox();
+    private final TextBox lineCount = new TextBox();
+    private final ListBox documentType = new ListBox();
+    private final CheckBox typing = new CheckBox("Typing bursts");
+    private final FlowPanel editorPanel = new FlowPanel();
+    private final Grid metricsGrid = new Grid(1, COLUMNS.length);
+    private final Label summary = new Label();
+    private final List<AceEditor> editors = new ArrayList<AceEditor>();
+    private final XMLElementDB xmlElementDB = new XMLElementDB();
+
+    private final Timer typingTimer = new Timer() {
+        private int editorIndex = 0;
+        private String burst = "";
+        private int pause = 0;
+
+        @Override
+        public void run() {
+            if (editors.isEmpty()) {
+                return;
+            }
+
+            if (burst.isEmpty()) {
+                if (pause > 0) {
+                    --pause;
+                    return;
+                }
+
+                // Start a burst in the next editor, on a random line
+                editorIndex = (editorIndex + 1) % editors.size();
+                final AceEditor editor = editors.get(editorIndex);
+                editor.gotoLine(1 + Random.nextInt(Integer.parseInt(lineCount.getText())));
+                burst = StressDocuments.burst();
+                pause = TYPING_PAUSE;
+            }
+
+            editors.get(editorIndex % editors.size()).insertAtCursor(burst.substring(0, 1));
+            burst = burst.substring(1);
+        }
+    };
+
+    private final Timer metricsTimer = new Timer() {
+        @Override
+        public void run() {
+            updateMetrics();
+        }
+    };
+
+    @Override
+    public void onModuleLoad() {
+        final String restUrl = GWT.getHostPageBaseURL() + "stubrest";
+
+        AceWorkers.setBuiltInConditionalChecking(true);
+
+        for (int i = 0; i < StressDocuments.TAGS.length; ++i) {
+            xmlElementDB.getDatabase().put(StressDocuments.TAGS[i], new JSONNumber(StressDocuments.FIRST_TOPIC_ID + i));
+        }
+        xmlElementDB.setRestEndpoint(restUrl);
+        xmlElementDB.setLoaded(true);
+
+        editorCount.setText("4");
+        editorCount.setVisibleLength(3);
+        lineCount.setText("5000");
+        lineCount.setVisibleLength(6);
+        documentType.addItem("DocBook");
+        documentType.addItem("Content Spec");
+
+        final Button create = new Button("Create editors", new ClickHandler() {
+            @Override
+            public void onClick(final ClickEvent event) {
+                createEditors(restUrl);
+            }
+        });
+
+        final Button paste = new Button("Paste " + PASTE_LINES + " lines", new ClickHandler() {
+            @Override
+            public void onClick(final ClickEvent event) {
+                for (final AceEditor editor : editors) {
+                    editor.gotoLine(1 + Random.nextInt(Integer.parseInt(lineCount.getText())));
+                    editor.insertAtCursor(StressDocuments.paste(PASTE_LINES));
+                }
+            }
+        });
+
+        final Button reset = new Button("Reset metrics", new ClickHandler() {
+            @Override
+            public void onClick(final ClickEvent event) {
+                for (final AceEditor editor : editors) {
+                    editor.getMetrics().reset();
+                }
+                updateMetrics();
+            }
+        });
+
+        typing.addValueChangeHandler(new ValueChangeHandler<Boolean>() {
+            @Override
+            public void onValueChange(final ValueChangeEvent<Boolean> event) {
+                if (event.getValue()) {
+                    typingTimer.scheduleRepeating(TYPING_INTERVAL);
+                } else {
+                    typingTimer.cancel();
+                }
+            }
+        });
+
+        final HorizontalPanel controls = new HorizontalPanel();
+        controls.setSpacing(5);
+        controls.add(new Label("Editors"));
+        controls.add(editorCount);
+        controls.add(new Label("Lines"));
+        controls.add(lineCount);
+        controls.add(documentType);
+        controls.add(create);
+        controls.add(typing);
+        controls.add(paste);
+        controls.add(reset);
+
+        for (int column = 0; column < COLUMNS.length; ++column) {
+            metricsGrid.setText(0, column, COLUMNS[column]);
+        }
+        metricsGrid.setBorderWidth(1);
+
+        RootPanel.get().add(controls);
+        RootPanel.get().add(summary);
+        RootPanel.get().add(metricsGrid);
+        RootPanel.get().add(editorPanel);
+
+        metricsTimer.scheduleRepeating(1000);
+    }
+
+    private void createEditors(final String restUrl) {
+        editorPanel.clear();
+        editors.clear();
+
+        final AceEditorData data = new AceEditorData();
+        data.setRestUrl(restUrl);
+        data.setTypoJsBaseUrl(GWT.getModuleBaseURL() + "typojs/");
+        data.setTypeJsLang("en_US");
+        data.setXMLElementDB(xmlElementDB);
+
+        final int count = Integer.parseInt(editorCount.getText());
+        final int lines = Integer.parseInt(lineCount.getText());
+        final boolean contentSpec = documentType.getSelectedIndex() == 1;
+
+        for (int i = 0; i < count; ++i) {
+            final AceEditor editor = new AceEditor(true, data, !contentSpec, contentSpec);
+            editor.setWidth("100%");
+            editor.setHeight("400px");
+            editor.setMode(contentSpec ? AceEditorMode.TEXT : AceEditorMode.XML);
+            editor.setTheme(AceEditorTheme.CHROME);
+            editor.setEnableSpellChecking(true);
+            editor.setEnableConditionalChecking(!contentSpec);
+            editor.setCondition(CONDITION);
+            editor.setConditionProfiles(CONDITION_PROFILES);
+            editor.setText(contentSpec ? StressDocuments.contentSpec(lines) : StressDocuments.docBook(lines));
+
+            final FlowPanel wrapper = new FlowPanel();
+            wrapper.getElement().getStyle().setProperty("position", "relative");
+            wrapper.getElement().getStyle().setProperty("height", "400px");
+            wrapper.getElement().getStyle().setProperty("marginBottom", "10px");
+            wrapper.add(editor);
+            editorPanel.add(wrapper);
+            editors.add(editor);
+        }
+
+        metricsGrid.resizeRows(1 + editors.size() * PASSES.length);
+        updateMetrics();
+    }
+
+    private void updateMetrics() {
+        int markersAlive = 0;
+        double dictionaryLoad = 0;
+        double memoHits = 0;
+        double memoLookups = 0;
+
+        for (int editorIndex = 0; editorIndex < editors.size(); ++editorIndex) {
+            final AceEditorMetrics metrics = editors.get(editorIndex).getMetrics();
+            markersAlive += metrics.getMarkersAlive();
+            memoHits += metrics.getCounter(AceEditorMetrics.WORD_MEMO_HITS);
+            memoLookups += metrics.getCounter(AceEditorMetrics.WORD_MEMO_HITS)
+                    + metrics.getCounter(AceEditorMetrics.WORD_MEMO_MISSES);
+
+            final AceEditorMetrics.Histogram dictionary = metrics.getHistogram(AceEditorMetrics.DICTIONARY_LOAD);
+            if (dictionary != null) {
+                dictionaryLoad = Math.max(dictionaryLoad, dictionary.getMax());
+            }
+
+            for (int passIndex = 0; passIndex < PASSES.length; ++passIndex) {
+                final String pass = PASSES[passIndex];
+                final int row = 1 + editorIndex * PASSES.length + passIndex;
+                final AceEditorMetrics.Histogram roundTrip = metrics.getHistogram(
+                        AceEditorMetrics.name(AceEditorMetrics.WORKER_ROUND_TRIP, pass));
+
+                metricsGrid.setText(row, 0, Integer.toString(editorIndex + 1));
+                metricsGrid.setText(row, 1, pass);
+                metricsGrid.setText(row, 2, format(metrics.getCounter(
+                        AceEditorMetrics.name(AceEditorMetrics.WORKER_REQUESTS, pass))));
+                metricsGrid.setText(row, 3, roundTrip == null ? "-" : format(roundTrip.getPercentile(50)));
+                metricsGrid.setText(row, 4, roundTrip == null ? "-" : format(roundTrip.getPercentile(95)));
+                metricsGrid.setText(row, 5, percentile95(metrics, AceEditorMetrics.MARKER_APPLY, pass));
+                metricsGrid.setText(row, 6, percentile95(metrics, AceEditorMetrics.KEYSTROKE_TO_MARKER, pass));
+                metricsGrid.setText(row, 7, format(metrics.getGauge(
+                        AceEditorMetrics.name(AceEditorMetrics.MARKERS_ALIVE, pass))));
+            }
+        }
+
+        summary.setText(editors.size() + " editors, " + markersAlive + " markers alive, slowest dictionary load "
+                + format(dictionaryLoad) + " ms, word memo hit rate "
+                + format(memoLookups == 0 ? 0 : 100 * memoHits / memoLookups) + "%");
+    }
+
+    private static String percentile95(final AceEditorMetrics metrics, final String metric, final String pass) {
+        final AceEditorMetrics.Histogram histogram = metrics.getHistogram(AceEditorMetrics.name(metric, pass));
+        return histogram == null ? "-" : format(histogram.getPercentile(95));
+    }
+
+    private static String format(final double value) {
+        return Long.toString(Math.round(value));
+    }
+}
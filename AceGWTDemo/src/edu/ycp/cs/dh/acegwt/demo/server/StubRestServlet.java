@@ -0,0 +1,150 @@
+package edu.ycp.cs.dh.acegwt.demo.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers the PressGang REST calls made by the AceEditor context menu with generated data, so the stress test can
+ * exercise the context menu without a PressGang server. The latency init parameter adds a delay, in milliseconds, to
+ * every response.
+ *
+ * <ul>
+ *     <li>GET /1/topic/get/json/{id}</li>
+ *     <li>GET /1/contentspecnodes/get/json/query;...csNodeEntityId={id}</li>
+ *     <li>POST /1/holdxml</li>
+ *     <li>GET /1/echoxml?id={id}</li>
+ * </ul>
+ */
+public class StubRestServlet extends HttpServlet {
+    private static final Pattern TOPIC = Pattern.compile("/1/topic/get/json/(\\d+)");
+    private static final Pattern CONTENT_SPEC_NODES =
+            Pattern.compile("/1/contentspecnodes/get/json/.*csNodeEntityId=(\\d+)");
+    private static final int REVISIONS = 5;
+    /**
+     * The number of held documents to keep. Older documents are discarded.
+     */
+    private static final int HELD_XML_LIMIT = 100;
+
+    private final Map<Integer, String> heldXml = new ConcurrentHashMap<Integer, String>();
+    private final AtomicInteger nextHeldXmlId = new AtomicInteger();
+    private long latency = 0;
+
+    @Override
+    public void init() throws ServletException {
+        final String latencyParameter = getInitParameter("latency");
+        if (latencyParameter != null) {
+            latency = Long.parseLong(latencyParameter);
+        }
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        delay();
+
+        final String path = req.getPathInfo() == null ? "" : req.getPathInfo();
+        final Matcher topic = TOPIC.matcher(path);
+        final Matcher contentSpecNodes = CONTENT_SPEC_NODES.matcher(path);
+
+        if (topic.matches()) {
+            sendJson(resp, topicJson(Integer.parseInt(topic.group(1))));
+        } else if (contentSpecNodes.matches()) {
+            sendJson(resp, contentSpecNodesJson(Integer.parseInt(contentSpecNodes.group(1))));
+        } else if ("/1/echoxml".equals(path) && req.getParameter("id") != null) {
+            final String xml = heldXml.get(Integer.parseInt(req.getParameter("id")));
+            if (xml == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                resp.setContentType("application/xml");
+                resp.setCharacterEncoding("UTF-8");
+                resp.getWriter().write(xml);
+            }
+        } else {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    @Override
+    protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        delay();
+
+        final String path = req.getPathInfo() == null ? "" : req.getPathInfo();
+        if (!"/1/holdxml".equals(path)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        final StringBuilder xml = new StringBuilder();
+        final BufferedReader reader = req.getReader();
+        final char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            xml.append(buffer, 0, read);
+        }
+
+        final int id = nextHeldXmlId.incrementAndGet();
+        heldXml.put(id, xml.toString());
+        heldXml.remove(id - HELD_XML_LIMIT);
+
+        sendJson(resp, "{\"value\":" + id + "}");
+    }
+
+    private static String topicJson(final int id) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"id\":").append(id);
+        json.append(",\"title\":").append(quote("Stress test topic " + id));
+        json.append(",\"xml\":").append(quote("<section><title>Stress test topic " + id + "</title><para>This topic was "
+                + "generated by the stub REST endpoint.</para></section>"));
+        json.append(",\"revisions\":{\"items\":[");
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < REVISIONS; ++i) {
+            if (i != 0) {
+                json.append(',');
+            }
+            json.append("{\"item\":{\"revision\":").append(100 - i);
+            json.append(",\"lastModified\":").append(now - i * 86400000L);
+            json.append(",\"logDetails\":{\"message\":").append(quote("Revision " + (100 - i) + " of topic " + id));
+            json.append("}}}");
+        }
+        json.append("]},\"sourceUrls_OTM\":{\"items\":[{\"item\":{\"url\":")
+                .append(quote("http://www.example.com/topics/" + id)).append(",\"title\":")
+                .append(quote("Source of topic " + id)).append("}}]}}");
+        return json.toString();
+    }
+
+    private static String contentSpecNodesJson(final int id) {
+        final int specId = 10 + id % 3;
+        return "{\"items\":[{\"item\":{\"entityRevision\":null,\"contentSpec\":{\"id\":" + specId
+                + ",\"children_OTM\":{\"items\":[{\"item\":{\"title\":\"Title\",\"additionalText\":"
+                + quote("Stress Test Guide " + specId) + "}}]}}}}]}";
+    }
+
+    private static String quote(final String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static void sendJson(final HttpServletResponse resp, final String json) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().write(json);
+    }
+
+    private void delay() {
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// A stand in for the PressGang conditional checking worker, used by the stress test. It marks the elements with a
+// condition attribute that does not match the condition regular expression. Only elements that open and close on the
+// same line are matched.
+//
+// Messages: {text: string, condition: string} replies with an array of {line, start, end} objects.
+
+self.addEventListener('message', function (e) {
+    var exclusions = [];
+    var condition = null;
+    try {
+        condition = e.data.condition ? new RegExp("^(" + e.data.condition + ")$") : null;
+    } catch (ex) {
+        // An invalid condition excludes nothing
+    }
+
+    if (condition != null) {
+        var elementRe = /<(\w+)[^>]*\scondition="([^"]*)"[^>]*>.*?<\/\1>/g;
+        var lines = e.data.text.split("\n");
+        for (var line = 0, count = lines.length; line < count; ++line) {
+            var match;
+            elementRe.lastIndex = 0;
+            while ((match = elementRe.exec(lines[line])) != null) {
+                if (!condition.test(match[2])) {
+                    exclusions.push({line: line, start: match.index, end: match.index + match[0].length});
+                }
+            }
+        }
+    }
+
+    postMessage(exclusions);
+});
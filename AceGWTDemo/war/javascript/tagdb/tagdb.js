@@ -0,0 +1,40 @@
+// A stand in for the PressGang tag matching worker, used by the stress test. It marks the names in the tag database
+// that appear in the text of a line (outside of the XML tags).
+//
+// Messages: {tagDB: json} sets the database, {lines: [...]} replies with an array of [start, end] pairs for each line.
+
+var tagNames = [];
+
+function matchLine(line) {
+    var matches = [];
+    var text = line.replace(/<.*?>/g, function(tag) {
+        return new Array(tag.length + 1).join(" ");
+    });
+
+    for (var i = 0, count = tagNames.length; i < count; ++i) {
+        var name = tagNames[i];
+        var index = text.indexOf(name);
+        while (index != -1) {
+            matches.push([index, index + name.length]);
+            index = text.indexOf(name, index + name.length);
+        }
+    }
+
+    return matches;
+}
+
+self.addEventListener('message', function (e) {
+    if (e.data.tagDB) {
+        tagNames = [];
+        var tagDB = JSON.parse(e.data.tagDB);
+        for (var name in tagDB) {
+            tagNames.push(name);
+        }
+    } else if (e.data.lines) {
+        var lineData = [];
+        for (var i = 0, count = e.data.lines.length; i < count; ++i) {
+            lineData.push(matchLine(e.data.lines[i]));
+        }
+        postMessage(lineData);
+    }
+});
@@ -0,0 +1,57 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+/**
+ * Reports the heap retained by the Typo.js dictionaries that checkspelling.js loads, with the packed dictionary and
+ * with the plain object table (the compact setting set to false). Run with:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar edu.ycp.cs.dh.acegwt.benchmarks.DictionaryFootprint [lang]
+ *
+ * The numbers are for Rhino, so they only compare the two representations. Browsers use less memory per object.
+ */
+public class DictionaryFootprint {
+    private static final String[][] DICTIONARIES = {
+            {"", ""}, {"-neg", "-neg"}, {"-neg", "-negphrase"}
+    };
+
+    public static void main(final String[] args) {
+        final String lang = args.length == 0 ? "en_US" : args[0];
+
+        System.out.println(String.format("%-20s %14s %14s", "Dictionary", "Compact KB", "Table KB"));
+        long compactTotal = 0;
+        long tableTotal = 0;
+        for (final String[] dictionary : DICTIONARIES) {
+            final long compact = retained(lang, dictionary[0], dictionary[1], true);
+            final long table = retained(lang, dictionary[0], dictionary[1], false);
+            compactTotal += compact;
+            tableTotal += table;
+            System.out.println(String.format("%-20s %14d %14d", lang + dictionary[1] + ".dic", compact / 1024,
+                    table / 1024));
+        }
+        System.out.println(String.format("%-20s %14d %14d", "Total", compactTotal / 1024, tableTotal / 1024));
+    }
+
+    /**
+     * @return The number of bytes retained by a Typo instance
+     */
+    private static long retained(final String lang, final String aff, final String dic, final boolean compact) {
+        final WorkerHarness harness = new WorkerHarness(WorkerHarness.TYPOJS + "typo.js");
+        harness.evaluate("function read(name) { return harness.readResource('" + lang + "' + name); }");
+
+        final long before = usedMemory();
+        harness.evaluate("var dictionary = new Typo('" + lang + "', read('" + aff + ".aff'), read('" + dic + ".dic'), "
+                + "{compact: " + compact + "});");
+        final long after = usedMemory();
+
+        // Keep the dictionary reachable until it has been measured
+        harness.evaluate("dictionary = null;");
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
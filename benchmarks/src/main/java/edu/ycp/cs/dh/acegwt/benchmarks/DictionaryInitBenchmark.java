@@ -0,0 +1,43 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the init action of checkspelling.js, which parses the positive, negative and negative phrase dictionaries.
+ * Each invocation starts from a new worker, with the scripts already loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DictionaryInitBenchmark {
+    @Param({"en_US"})
+    public String lang;
+
+    private WorkerHarness harness;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        harness = WorkerHarness.spellChecking();
+    }
+
+    @Benchmark
+    public Object init() {
+        return harness.initSpellChecking(lang);
+    }
+}
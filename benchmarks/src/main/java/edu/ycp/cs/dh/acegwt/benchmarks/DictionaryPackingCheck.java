@@ -0,0 +1,82 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+/**
+ * Checks that the packed dictionary built by Typo.js's _packDictionary() gives the same results as the plain object
+ * table (the compact setting set to false). Every word in the table, its lower case, capitalized and upper case forms,
+ * and the word with a letter added, is passed to _lookup(), check() and hasFlag(word, "KEEPCASE") of both. Run with:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar edu.ycp.cs.dh.acegwt.benchmarks.DictionaryPackingCheck [lang]
+ *
+ * The differences are printed, and the exit status is 1 if there are any.
+ */
+public class DictionaryPackingCheck {
+    private static final String[][] DICTIONARIES = {
+            {"", ""}, {"-neg", "-neg"}, {"-neg", "-negphrase"}
+    };
+
+    /**
+     * The number of differences printed for each dictionary
+     */
+    private static final int MAX_REPORTED = 20;
+
+    private static final String COMPARE =
+            "function describe(dictionary, word) {\n" +
+            "    return JSON.stringify([dictionary._lookup(word) || null, dictionary.check(word),\n" +
+            "        dictionary.hasFlag(word, 'KEEPCASE')]);\n" +
+            "}\n" +
+            "function compare(maxReported) {\n" +
+            "    var words = Object.keys(table.dictionaryTable);\n" +
+            "    var differences = [];\n" +
+            "    var count = 0;\n" +
+            "    for (var i = 0; i < words.length; ++i) {\n" +
+            "        var word = words[i];\n" +
+            "        var forms = [word, word.toLowerCase(), word.charAt(0).toUpperCase() + word.substring(1),\n" +
+            "            word.toUpperCase(), word + 'q'];\n" +
+            "        for (var j = 0; j < forms.length; ++j) {\n" +
+            "            var expected = describe(table, forms[j]);\n" +
+            "            var actual = describe(packed, forms[j]);\n" +
+            "            if (expected != actual) {\n" +
+            "                if (++count <= maxReported) {\n" +
+            "                    differences.push(forms[j] + ': table ' + expected + ', packed ' + actual);\n" +
+            "                }\n" +
+            "            }\n" +
+            "        }\n" +
+            "    }\n" +
+            "    return {words: words.length, differences: count, reported: differences.join('\\n')};\n" +
+            "}\n";
+
+    public static void main(final String[] args) {
+        final String lang = args.length == 0 ? "en_US" : args[0];
+
+        int differences = 0;
+        for (final String[] dictionary : DICTIONARIES) {
+            differences += compare(lang, dictionary[0], dictionary[1]);
+        }
+
+        System.out.println(differences == 0 ? "The packed dictionaries match the tables" :
+                differences + " differences between the packed dictionaries and the tables");
+        System.exit(differences == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return The number of differences found between the packed dictionary and the table
+     */
+    private static int compare(final String lang, final String aff, final String dic) {
+        final WorkerHarness harness = new WorkerHarness(WorkerHarness.TYPOJS + "typo.js");
+        harness.evaluate("function read(name) { return harness.readResource('" + lang + "' + name); }");
+        harness.evaluate("var packed = new Typo('" + lang + "', read('" + aff + ".aff'), read('" + dic + ".dic'), "
+                + "{compact: true});");
+        harness.evaluate("var table = new Typo('" + lang + "', read('" + aff + ".aff'), read('" + dic + ".dic'), "
+                + "{compact: false});");
+        harness.evaluate(COMPARE);
+
+        harness.evaluate("var result = compare(" + MAX_REPORTED + ");");
+        final int words = ((Number) harness.evaluate("result.words")).intValue();
+        final int differences = ((Number) harness.evaluate("result.differences")).intValue();
+        System.out.println(lang + dic + ".dic: " + words + " words, " + differences + " differences");
+        if (differences != 0) {
+            System.out.println(harness.evaluate("result.reported"));
+        }
+        return differences;
+    }
+}
@@ -0,0 +1,203 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates DocBook XML documents to benchmark the worker scripts against.
+ *
+ * The same parameters and seed always produce the same document, so runs can be compared.
+ */
+public final class DocBookCorpus {
+    private static final String[] WORDS = {
+            "the", "a", "an", "and", "or", "of", "to", "in", "on", "for", "with", "from", "by", "is", "are", "be", "can",
+            "will", "this", "that", "these", "when", "which", "if", "each", "all", "any", "not", "as", "at", "it",
+            "server", "client", "application", "configuration", "file", "directory", "user", "system", "service",
+            "network", "interface", "package", "command", "option", "value", "property", "default", "example", "chapter",
+            "section", "table", "figure", "procedure", "step", "install", "configure", "start", "stop", "restart",
+            "create", "delete", "update", "select", "enter", "click", "open", "close", "save", "run", "deploy",
+            "security", "domain", "realm", "password", "account", "group", "role", "permission", "certificate", "key",
+            "database", "connection", "driver", "datasource", "cluster", "node", "instance", "profile", "subsystem",
+            "management", "console", "administrator", "log", "message", "error", "warning", "information", "required",
+            "optional", "following", "previous", "next", "first", "last", "new", "existing", "local", "remote", "host",
+            "port", "address", "protocol", "request", "response", "session", "timeout", "memory", "thread", "process",
+            "version", "release", "product", "documentation", "guide", "reference", "note", "important", "describes",
+            "provides", "contains", "allows", "requires", "ensures", "specifies", "displays", "returns", "uses"
+    };
+
+    private static final String[] NEGATIVE_WORDS = {
+            "can't", "won't", "don't", "basically", "bootloader", "bugfix", "checkbox", "chipset", "crossplatform",
+            "domainname", "down-time"
+    };
+
+    private static final String[] NEGATIVE_PHRASES = {
+            "in order to", "a lot of", "due to the fact that", "is able to", "make use of", "in the event that",
+            "prior to", "with regard to", "a number of", "it should be noted that", "whether or not"
+    };
+
+    private static final String[] INLINE_ELEMENTS = {
+            "emphasis", "literal", "filename", "command", "replaceable", "guilabel", "application", "systemitem"
+    };
+
+    private static final String[] ENTITIES = {"&nbsp;", "&PRODUCT;", "&BOOKID;", "&lt;", "&gt;", "&amp;"};
+
+    private static final int LINES_PER_PARA = 6;
+    private static final int PARAS_PER_SECTION = 4;
+
+    private DocBookCorpus() {
+
+    }
+
+    /**
+     * @param lines           The number of lines to generate
+     * @param markupDensity   The probability (0 to 1) of a word being wrapped in an inline element, or replaced with an
+     *                        entity, link, cross reference or number
+     * @param misspellingRate The probability (0 to 1) of a word being misspelled
+     * @param negativeRate    The probability (0 to 1) of a word being replaced with a negative word or phrase
+     * @param seed            The seed for the random number generator
+     * @return The lines of the document
+     */
+    public static String[] generate(final int lines, final double markupDensity, final double misspellingRate,
+            final double negativeRate, final long seed) {
+        final Random random = new Random(seed);
+        final List<String> document = new ArrayList<String>(lines);
+
+        document.add("<?xml version='1.0' encoding='utf-8' ?>");
+        document.add("<chapter id=\"chap-Benchmark\">");
+        document.add("\t<title>Benchmark &PRODUCT; Chapter</title>");
+
+        int section = 0;
+        int para = 0;
+        int lineInPara = 0;
+        while (document.size() < lines - 1) {
+            if (para == 0 && lineInPara == 0) {
+                ++section;
+                document.add("\t<section id=\"sect-Benchmark-" + section + "\">");
+                document.add("\t\t<title>" + sentence(random, 4, 0, misspellingRate, negativeRate) + "</title>");
+            }
+
+            if (lineInPara == 0) {
+                document.add("\t\t<para>");
+            }
+
+            document.add("\t\t\t" + sentence(random, 8 + random.nextInt(10), markupDensity, misspellingRate,
+                    negativeRate));
+            ++lineInPara;
+
+            if (lineInPara == LINES_PER_PARA) {
+                document.add("\t\t</para>");
+                lineInPara = 0;
+                ++para;
+                if (para == PARAS_PER_SECTION) {
+                    document.add("\t</section>");
+                    para = 0;
+                }
+            }
+        }
+        document.add("</chapter>");
+
+        return document.subList(0, lines).toArray(new String[lines]);
+    }
+
+    /**
+     * Generates plain text sentences with no markup, which is useful when only the dictionary lookups are of interest.
+     */
+    public static String[] generateText(final int lines, final double misspellingRate, final double negativeRate,
+            final long seed) {
+        final Random random = new Random(seed);
+        final String[] text = new String[lines];
+        for (int i = 0; i < lines; ++i) {
+            text[i] = sentence(random, 8 + random.nextInt(10), 0, misspellingRate, negativeRate);
+        }
+        return text;
+    }
+
+    /**
+     * Generates a list of words to request suggestions for. Each word is a dictionary word with one or two edits.
+     */
+    public static String[] misspelledWords(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final String[] words = new String[count];
+        for (int i = 0; i < count; ++i) {
+            String word = pick(random, WORDS);
+            while (word.length() < 4) {
+                word = pick(random, WORDS);
+            }
+            words[i] = misspell(random, random.nextBoolean() ? word : misspell(random, word));
+        }
+        return words;
+    }
+
+    private static String sentence(final Random random, final int words, final double markupDensity,
+            final double misspellingRate, final double negativeRate) {
+        final StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; ++i) {
+            if (i != 0) {
+                sentence.append(' ');
+            }
+
+            String word = pick(random, WORDS);
+            if (random.nextDouble() < negativeRate) {
+                word = random.nextBoolean() ? pick(random, NEGATIVE_WORDS) : pick(random, NEGATIVE_PHRASES);
+            } else if (random.nextDouble() < misspellingRate) {
+                word = misspell(random, word);
+            }
+
+            if (i == 0) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+
+            if (random.nextDouble() < markupDensity) {
+                sentence.append(markup(random, word));
+            } else {
+                sentence.append(word);
+            }
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static String markup(final Random random, final String word) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return pick(random, ENTITIES);
+            case 1:
+                return "<ulink url=\"http://www.example.com/docs/" + word + ".html\">" + word + "</ulink>";
+            case 2:
+                return "<xref linkend=\"sect-Benchmark-" + random.nextInt(100) + "\" />";
+            case 3:
+                return Integer.toString(random.nextInt(10000));
+            default:
+                final String element = pick(random, INLINE_ELEMENTS);
+                return "<" + element + ">" + word + "</" + element + ">";
+        }
+    }
+
+    private static String misspell(final Random random, final String word) {
+        if (word.length() < 2) {
+            return word + "x";
+        }
+
+        final char[] chars = word.toCharArray();
+        final int index = random.nextInt(chars.length - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                // transpose two letters
+                final char c = chars[index];
+                chars[index] = chars[index + 1];
+                chars[index + 1] = c;
+                return new String(chars);
+            case 1:
+                // drop a letter
+                return word.substring(0, index) + word.substring(index + 1);
+            default:
+                // replace a letter
+                chars[index] = (char) ('a' + random.nextInt(26));
+                return new String(chars);
+        }
+    }
+
+    private static String pick(final Random random, final String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,263 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the AceGWTPerf suite in a headless browser, and compares the results to the recorded baselines.
+ *
+ * The compiled suite is served from a local HTTP server, which also receives the results posted by the page. A case
+ * fails if its median time is more than the threshold above its baseline. A case without a baseline also fails, so a
+ * missing or incomplete baselines file can't let a regression through. -record writes every result to the baselines
+ * file instead of comparing them. Baselines are only meaningful on the machine and browser they were recorded with, so
+ * they are recorded on the machine that runs the suite.
+ *
+ * Usage: PerfRegressionRunner [-war dir] [-browser command] [-baselines file] [-threshold fraction] [-timeout seconds]
+ * [-record]
+ */
+public class PerfRegressionRunner {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PAGE = "AceGWTPerf.html";
+
+    private File war = new File("target/perf-war");
+    private String browser = System.getenv("CHROME_BIN") == null ? "chromium" : System.getenv("CHROME_BIN");
+    private File baselines = new File("perf-baselines.properties");
+    private double threshold = 0.25;
+    private int timeout = 600;
+    private boolean record = false;
+
+    private volatile String results;
+    private final CountDownLatch resultsReceived = new CountDownLatch(1);
+
+    public static void main(final String[] args) throws Exception {
+        final PerfRegressionRunner runner = new PerfRegressionRunner();
+        for (int i = 0; i < args.length; ++i) {
+            final String arg = args[i];
+            if ("-war".equals(arg)) {
+                runner.war = new File(args[++i]);
+            } else if ("-browser".equals(arg)) {
+                runner.browser = args[++i];
+            } else if ("-baselines".equals(arg)) {
+                runner.baselines = new File(args[++i]);
+            } else if ("-threshold".equals(arg)) {
+                runner.threshold = Double.parseDouble(args[++i]);
+            } else if ("-timeout".equals(arg)) {
+                runner.timeout = Integer.parseInt(args[++i]);
+            } else if ("-record".equals(arg)) {
+                runner.record = true;
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        System.exit(runner.run() ? 0 : 1);
+    }
+
+    /**
+     * @return true if no case regressed
+     */
+    public boolean run() throws IOException, InterruptedException {
+        if (!new File(war, PAGE).isFile()) {
+            throw new IllegalStateException(new File(war, PAGE) + " does not exist. Build the suite with "
+                    + "\"mvn -f benchmarks/pom.xml -Pperf package\" first.");
+        }
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new StaticHandler());
+        server.createContext("/results", new ResultsHandler());
+        server.start();
+
+        Process process = null;
+        try {
+            final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/" + PAGE;
+            final List<String> command = new ArrayList<String>();
+            command.add(browser);
+            command.add("--headless");
+            command.add("--disable-gpu");
+            command.add("--no-sandbox");
+            command.add("--no-first-run");
+            command.add("--window-size=1280,1024");
+            command.add("--remote-debugging-port=0");
+            command.add(url);
+            final File log = new File(war.getAbsoluteFile().getParentFile(), "perf-browser.log");
+            process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+
+            if (!resultsReceived.await(timeout, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("No results were received from " + url + " in " + timeout + " seconds");
+            }
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+            server.stop(0);
+        }
+
+        return compare(results);
+    }
+
+    private boolean compare(final String resultText) throws IOException {
+        final Properties measured = new Properties();
+        measured.load(new StringReader(resultText));
+
+        final Properties recorded = new Properties();
+        if (baselines.isFile()) {
+            final InputStream in = new FileInputStream(baselines);
+            try {
+                recorded.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        boolean passed = true;
+        boolean baselinesChanged = false;
+        int missing = 0;
+        final Map<String, String> sorted = new TreeMap<String, String>();
+        for (final String name : measured.stringPropertyNames()) {
+            sorted.put(name, measured.getProperty(name));
+        }
+
+        System.out.println(String.format("%-30s %12s %12s %10s  %s", "Case", "Baseline ms", "Median ms", "Change",
+                "Result"));
+        for (final Map.Entry<String, String> entry : sorted.entrySet()) {
+            final String name = entry.getKey();
+            final double median = Double.parseDouble(entry.getValue());
+            final String baselineValue = recorded.getProperty(name);
+
+            if (record) {
+                recorded.setProperty(name, entry.getValue());
+                baselinesChanged = true;
+                System.out.println(String.format("%-30s %12s %12.2f %10s  %s", name, "-", median, "-", "RECORDED"));
+                continue;
+            }
+
+            if (baselineValue == null) {
+                ++missing;
+                System.out.println(String.format("%-30s %12s %12.2f %10s  %s", name, "-", median, "-", "NO BASELINE"));
+                continue;
+            }
+
+            final double baseline = Double.parseDouble(baselineValue);
+            final double change = baseline == 0 ? 0 : (median - baseline) / baseline;
+            final boolean regressed = median > baseline * (1 + threshold);
+            passed &= !regressed;
+            System.out.println(String.format("%-30s %12.2f %12.2f %+9.1f%%  %s", name, baseline, median, change * 100,
+                    regressed ? "REGRESSION" : "OK"));
+        }
+
+        for (final String line : resultText.split("\n")) {
+            if (line.startsWith("#")) {
+                System.out.println(line);
+            }
+        }
+
+        if (baselinesChanged) {
+            final OutputStream out = new FileOutputStream(baselines);
+            try {
+                recorded.store(out, "AceGWTPerf baselines, in milliseconds. Update with PerfRegressionRunner -record");
+            } finally {
+                out.close();
+            }
+        }
+
+        if (!passed) {
+            System.out.println("One or more cases were more than " + Math.round(threshold * 100)
+                    + "% slower than their baselines");
+        }
+
+        if (missing != 0) {
+            System.out.println(missing + " case(s) have no baseline in " + baselines.getAbsolutePath()
+                    + ". Record the baselines on this machine with -record.");
+        }
+
+        return passed && missing == 0;
+    }
+
+    /**
+     * Serves the compiled suite
+     */
+    private class StaticHandler implements HttpHandler {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                final String path = exchange.getRequestURI().getPath();
+                final File file = new File(war, path);
+                if (path.contains("..") || !file.isFile()) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", contentType(path));
+                exchange.sendResponseHeaders(200, file.length());
+                final InputStream in = new FileInputStream(file);
+                try {
+                    copy(in, exchange.getResponseBody());
+                } finally {
+                    in.close();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Receives the results posted by the suite
+     */
+    private class ResultsHandler implements HttpHandler {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                copy(exchange.getRequestBody(), body);
+                results = new String(body.toByteArray(), UTF_8);
+                exchange.sendResponseHeaders(204, -1);
+            } finally {
+                exchange.close();
+                resultsReceived.countDown();
+            }
+        }
+    }
+
+    private static String contentType(final String path) {
+        if (path.endsWith(".html")) {
+            return "text/html; charset=UTF-8";
+        } else if (path.endsWith(".js")) {
+            return "application/javascript";
+        } else if (path.endsWith(".css")) {
+            return "text/css";
+        } else if (path.endsWith(".png")) {
+            return "image/png";
+        } else if (path.endsWith(".gif")) {
+            return "image/gif";
+        }
+        return "application/octet-stream";
+    }
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
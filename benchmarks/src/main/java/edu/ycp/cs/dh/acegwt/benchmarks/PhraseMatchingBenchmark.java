@@ -0,0 +1,114 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the phrase matching done by checkspelling.js, where every group of up to 7 words in a line is looked up in
+ * the negative phrase and negative word dictionaries before the single words are checked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PhraseMatchingBenchmark {
+    /**
+     * The number of phrases looked up by {@link #checkPhrase()}
+     */
+    private static final int PHRASES = 1000;
+    private static final int MAX_WORDS_IN_PHRASE = 7;
+    private static final int TEXT_LINES = 1000;
+
+    /**
+     * The probability of a word being replaced with a negative word or phrase
+     */
+    @Param({"0.0", "0.05"})
+    public double negativeRate;
+
+    private WorkerHarness harness;
+    private String[] text;
+    private String[] phrases;
+
+    @Setup
+    public void setup() {
+        harness = WorkerHarness.spellChecking();
+        harness.initSpellChecking("en_US");
+        text = DocBookCorpus.generateText(TEXT_LINES, 0, negativeRate, 42);
+
+        final List<String> candidates = new ArrayList<String>();
+        for (final String line : text) {
+            final String[] words = line.split("\\s");
+            for (int length = MAX_WORDS_IN_PHRASE; length > 1; --length) {
+                for (int i = 0; i + length <= words.length && candidates.size() < PHRASES; ++i) {
+                    final StringBuilder phrase = new StringBuilder(words[i]);
+                    for (int j = i + 1; j < i + length; ++j) {
+                        phrase.append(' ').append(words[j]);
+                    }
+                    candidates.add(phrase.toString());
+                }
+            }
+        }
+        phrases = candidates.toArray(new String[candidates.size()]);
+    }
+
+    /**
+     * Looks up multi word phrases in the negative phrase dictionary
+     */
+    @Benchmark
+    @OperationsPerInvocation(PHRASES)
+    public int checkPhrase() {
+        int matches = 0;
+        for (final String phrase : phrases) {
+            if (Boolean.TRUE.equals(harness.call("negativePhraseDictionary", "check", phrase))) {
+                ++matches;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Clears the word memo before each invocation of the benchmark that uses it.
+     */
+    @State(Scope.Thread)
+    public static class ColdMemo {
+        @Setup(Level.Invocation)
+        public void clear(final PhraseMatchingBenchmark benchmark) {
+            benchmark.harness.clearWordMemo();
+        }
+    }
+
+    /**
+     * Spell checks plain text, so the time is spent in the phrase and word lookups rather than removing markup. The
+     * same text is checked every time, so this measures the steady state, where the words and phrases are answered by
+     * the word memo.
+     */
+    @Benchmark
+    public Object spellCheckText() {
+        return harness.spellCheck(text);
+    }
+
+    /**
+     * Spell checks plain text with an empty word memo, so every word and phrase is looked up in the dictionaries
+     */
+    @Benchmark
+    public Object spellCheckTextColdMemo(final ColdMemo coldMemo) {
+        return harness.spellCheck(text);
+    }
+}
@@ -0,0 +1,74 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the spellcheck action of checkspelling.js, which is sent the whole document every time it changes.
+ *
+ * {@link #spellCheck()} checks the same document every time, so after the first check every word is answered by the
+ * word memo. This is the steady state of an editor whose text is being edited. {@link #spellCheckColdMemo(ColdMemo)}
+ * clears the memo before each check, as when a document is first opened.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SpellCheckBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int lines;
+
+    @Param({"0.0", "0.1", "0.3"})
+    public double markupDensity;
+
+    private WorkerHarness harness;
+    private String[] document;
+
+    @Setup
+    public void setup() {
+        harness = WorkerHarness.spellChecking();
+        harness.initSpellChecking("en_US");
+        document = DocBookCorpus.generate(lines, markupDensity, 0.02, 0.01, 42);
+    }
+
+    /**
+     * Clears the word memo before each invocation of the benchmark that uses it.
+     */
+    @State(Scope.Thread)
+    public static class ColdMemo {
+        @Setup(Level.Invocation)
+        public void clear(final SpellCheckBenchmark benchmark) {
+            benchmark.harness.clearWordMemo();
+        }
+    }
+
+    /**
+     * Checks the document with the word memo holding the results of the previous check
+     */
+    @Benchmark
+    public Object spellCheck() {
+        return harness.spellCheck(document);
+    }
+
+    /**
+     * Checks the document with an empty word memo, so every word is looked up in the dictionaries
+     */
+    @Benchmark
+    public Object spellCheckColdMemo(final ColdMemo coldMemo) {
+        return harness.spellCheck(document);
+    }
+}
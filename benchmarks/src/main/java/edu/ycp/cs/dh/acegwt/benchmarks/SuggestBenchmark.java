@@ -0,0 +1,49 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the suggest action of checkspelling.js, which is sent when the context menu is opened on a misspelled word.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SuggestBenchmark {
+    /**
+     * The number of suggestions requested by the editor
+     */
+    @Param({"5"})
+    public int limit;
+
+    private WorkerHarness harness;
+    private String[] words;
+    private int index;
+
+    @Setup
+    public void setup() {
+        harness = WorkerHarness.spellChecking();
+        harness.initSpellChecking("en_US");
+        words = DocBookCorpus.misspelledWords(64, 42);
+    }
+
+    @Benchmark
+    public Object suggest() {
+        index = (index + 1) % words.length;
+        return harness.suggest(words[index], limit);
+    }
+}
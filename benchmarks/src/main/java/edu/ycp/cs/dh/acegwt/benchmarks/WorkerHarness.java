@@ -0,0 +1,266 @@
+package edu.ycp.cs.dh.acegwt.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Runs a worker script in the Rhino JavaScript engine.
+ *
+ * The worker globals that the scripts use (self.addEventListener, postMessage, importScripts and a synchronous
+ * XMLHttpRequest) are replaced by a shim, and every URL is resolved against the classpath. Messages are dispatched
+ * synchronously, and {@link #post(Scriptable)} returns the last message posted back by the worker.
+ */
+public class WorkerHarness {
+    /**
+     * The directory on the classpath that the typojs scripts and dictionaries are copied to.
+     */
+    public static final String TYPOJS = "typojs/";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final String PRELUDE =
+            "var self = this;\n" +
+            "var __listeners = [];\n" +
+            "var __messages = [];\n" +
+            "self.addEventListener = function(type, listener) {\n" +
+            "    if (type == 'message') {\n" +
+            "        __listeners.push(listener);\n" +
+            "    }\n" +
+            "};\n" +
+            "function postMessage(data) {\n" +
+            "    __messages.push(data);\n" +
+            "}\n" +
+            "function importScripts() {\n" +
+            "    for (var i = 0; i < arguments.length; ++i) {\n" +
+            "        harness.load(String(arguments[i]));\n" +
+            "    }\n" +
+            "}\n" +
+            "function XMLHttpRequest() {}\n" +
+            "XMLHttpRequest.prototype.open = function(method, url) { this.url = String(url); };\n" +
+            "XMLHttpRequest.prototype.overrideMimeType = function(mimeType) {};\n" +
+            "XMLHttpRequest.prototype.send = function(body) {\n" +
+            "    this.responseText = harness.readResource(this.url);\n" +
+            "    this.status = 200;\n" +
+            "};\n" +
+            "function __dispatch(data) {\n" +
+            "    __messages = [];\n" +
+            "    var event = {data: data};\n" +
+            "    for (var i = 0; i < __listeners.length; ++i) {\n" +
+            "        __listeners[i](event);\n" +
+            "    }\n" +
+            "    return __messages.length == 0 ? null : __messages[__messages.length - 1];\n" +
+            "}\n";
+
+    private static final ContextFactory CONTEXT_FACTORY = new ContextFactory() {
+        @Override
+        protected Context makeContext() {
+            final Context cx = super.makeContext();
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setOptimizationLevel(9);
+            cx.getWrapFactory().setJavaPrimitiveWrap(false);
+            return cx;
+        }
+    };
+
+    private final ScriptableObject scope;
+    private final Function dispatch;
+
+    /**
+     * @param scripts The classpath locations of the scripts to load, in order
+     */
+    public WorkerHarness(final String... scripts) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "harness", Context.javaToJS(this, scope));
+            cx.evaluateString(scope, PRELUDE, "prelude.js", 1, null);
+            for (final String script : scripts) {
+                load(script);
+            }
+            dispatch = (Function) ScriptableObject.getProperty(scope, "__dispatch");
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Creates a harness running checkspelling.js, which loads typo.js with importScripts().
+     */
+    public static WorkerHarness spellChecking() {
+        return new WorkerHarness(TYPOJS + "checkspelling.js");
+    }
+
+    /**
+     * Evaluates a script from the classpath. This is called by the importScripts() shim.
+     *
+     * @param script The classpath location of the script, or a name relative to the typojs directory
+     */
+    public void load(final String script) {
+        final String path = resolve(script);
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            cx.evaluateString(scope, readResource(path), path, 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Evaluates JavaScript in the worker's global scope.
+     *
+     * @return The value of the last statement
+     */
+    public Object evaluate(final String source) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            return cx.evaluateString(scope, source, "evaluate", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Reads a file from the classpath. This is called by the XMLHttpRequest shim.
+     *
+     * A missing file is returned as a comment, which Typo.js treats as an empty dictionary. Returning an empty string
+     * would make Typo.js try to load the file from a Chrome extension.
+     *
+     * @param url The classpath location of the file, or a name relative to the typojs directory
+     * @return The contents of the file
+     */
+    public String readResource(final String url) {
+        final InputStream in = WorkerHarness.class.getClassLoader().getResourceAsStream(resolve(url));
+        if (in == null) {
+            return "# " + url + " was not found";
+        }
+
+        try {
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new String(out.toByteArray(), ISO_8859_1);
+            } finally {
+                in.close();
+            }
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Could not read " + url, ex);
+        }
+    }
+
+    /**
+     * Creates a message object, to be populated and passed to {@link #post(Scriptable)}.
+     *
+     * @param action The value of the action property
+     */
+    public Scriptable message(final String action) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            final Scriptable message = cx.newObject(scope);
+            ScriptableObject.putProperty(message, "action", action);
+            return message;
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Converts an array of strings into a JavaScript array.
+     */
+    public Scriptable array(final String[] values) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            final Object[] elements = new Object[values.length];
+            System.arraycopy(values, 0, elements, 0, values.length);
+            return cx.newArray(scope, elements);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Sends a message to the worker's message listeners.
+     *
+     * @return The last message posted back by the worker while handling the message, or null if it posted none
+     */
+    public Object post(final Scriptable message) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            return dispatch.call(cx, scope, scope, new Object[]{message});
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Calls a method on an object held in a global variable of the worker.
+     *
+     * @param global The name of the global variable
+     * @param method The name of the method
+     * @param args   The arguments, which must be strings, numbers or booleans
+     * @return The value returned by the method
+     */
+    public Object call(final String global, final String method, final Object... args) {
+        final Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            final Scriptable target = (Scriptable) ScriptableObject.getProperty(scope, global);
+            return ScriptableObject.callMethod(cx, target, method, args);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Sends the init message to checkspelling.js, which loads the dictionaries.
+     *
+     * @param lang The dictionary language
+     */
+    public Object initSpellChecking(final String lang) {
+        final Scriptable message = message("init");
+        ScriptableObject.putProperty(message, "lang", lang);
+        ScriptableObject.putProperty(message, "baseTypoJsUrl", TYPOJS);
+        return post(message);
+    }
+
+    /**
+     * Makes checkspelling.js forget the results it has memoised for every word, so the next check looks every word up
+     * in the dictionaries again.
+     */
+    public void clearWordMemo() {
+        evaluate("for (var lang in languages) { clearMemo(languages[lang]); }");
+    }
+
+    /**
+     * Sends the spellcheck message to checkspelling.js.
+     */
+    public Object spellCheck(final String[] lines) {
+        final Scriptable message = message("spellcheck");
+        ScriptableObject.putProperty(message, "lines", array(lines));
+        return post(message);
+    }
+
+    /**
+     * Sends the suggest message to checkspelling.js.
+     */
+    public Object suggest(final String word, final int limit) {
+        final Scriptable message = message("suggest");
+        ScriptableObject.putProperty(message, "word", word);
+        ScriptableObject.putProperty(message, "limit", limit);
+        return post(message);
+    }
+
+    private static String resolve(final String url) {
+        return url.startsWith(TYPOJS) ? url : TYPOJS + url;
+    }
+}
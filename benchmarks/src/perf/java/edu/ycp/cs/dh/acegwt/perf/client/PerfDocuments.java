@@ -0,0 +1,48 @@
+package edu.ycp.cs.dh.acegwt.perf.client;
+
+/**
+ * Generates the documents used by the suite. The documents only depend on the number of lines, so every run of the
+ * suite times the same work.
+ */
+final class PerfDocuments {
+    private static final String[] WORDS = {
+            "the", "server", "configuration", "file", "is", "in", "directory", "and", "user", "can", "start", "service",
+            "with", "following", "command", "to", "deploy", "application", "cluster", "node", "security", "domain"
+    };
+
+    private PerfDocuments() {
+
+    }
+
+    /**
+     * @param lines The number of lines in the document
+     * @return A DocBook chapter with the given number of lines
+     */
+    static String docBook(final int lines) {
+        final StringBuilder document = new StringBuilder();
+        document.append("<chapter id=\"chap-Perf\">\n");
+        int seed = 1;
+        for (int line = 1; line < lines - 1; ++line) {
+            if (line % 20 == 1) {
+                document.append("\t<section id=\"sect-Perf-").append(line).append("\">\n");
+            } else if (line % 20 == 0) {
+                document.append("\t</section>\n");
+            } else if (line % 5 == 0) {
+                document.append("\t\t<para><emphasis>Note</emphasis> &PRODUCT; <xref linkend=\"sect-Perf-1\" /></para>\n");
+            } else {
+                document.append("\t\t<para>");
+                for (int word = 0; word < 12; ++word) {
+                    // A linear congruential generator, so the text is the same in every browser
+                    seed = (seed * 69069 + 1) & 0x7fffffff;
+                    if (word != 0) {
+                        document.append(' ');
+                    }
+                    document.append(WORDS[seed % WORDS.length]);
+                }
+                document.append(".</para>\n");
+            }
+        }
+        document.append("</chapter>");
+        return document.toString();
+    }
+}
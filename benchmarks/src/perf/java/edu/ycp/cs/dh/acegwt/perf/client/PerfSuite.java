@@ -0,0 +1,363 @@
+package edu.ycp.cs.dh.acegwt.perf.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gwt.core.client.EntryPoint;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.ui.RootPanel;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditor;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorMode;
+import edu.ycp.cs.dh.acegwt.client.ace.AceEditorTheme;
+
+/**
+ * Times the AceEditor operations that are sensitive to the size of the document, and posts the median time of each
+ * case to the results URL. Every case is run {@link #WARMUP_SAMPLES} times before it is timed {@link #SAMPLES} times,
+ * and the browser is given a chance to run its own tasks between samples.
+ *
+ * The results are posted as lines of <code>case=milliseconds</code>, and also displayed in the page.
+ */
+public class PerfSuite implements EntryPoint {
+    private static final String RESULTS_URL = "results";
+    private static final int WARMUP_SAMPLES = 2;
+    private static final int SAMPLES = 7;
+    private static final int MARKERS = 5000;
+    /**
+     * How long to wait for the context menu code to be downloaded before skipping the hit testing case
+     */
+    private static final int FEATURE_TIMEOUT = 10000;
+    private static final String GUTTER_STYLE = "perf-gutter";
+
+    private final String document10k = PerfDocuments.docBook(10000);
+    private final String document50k = PerfDocuments.docBook(50000);
+    private final StringBuilder results = new StringBuilder();
+
+    private AceEditor editor;
+
+    /**
+     * A timed operation
+     */
+    private abstract class PerfCase {
+        final String name;
+
+        PerfCase(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Called before every sample, and not timed
+         */
+        void setUp() {
+
+        }
+
+        abstract void run();
+
+        /**
+         * Called after every sample, and not timed
+         */
+        void tearDown() {
+
+        }
+
+        /**
+         * @return false if the case can not run in this browser, in which case it is reported as skipped
+         */
+        boolean isSupported() {
+            return true;
+        }
+    }
+
+    @Override
+    public void onModuleLoad() {
+        editor = createEditor();
+        RootPanel.get().add(editor);
+
+        final List<PerfCase> cases = new ArrayList<PerfCase>();
+
+        cases.add(new PerfCase("setText.10k") {
+            @Override
+            void run() {
+                editor.setText(document10k);
+                render(editor);
+            }
+        });
+
+        cases.add(new PerfCase("setText.50k") {
+            @Override
+            void run() {
+                editor.setText(document50k);
+                render(editor);
+            }
+        });
+
+        cases.add(new PerfCase("markers.apply.5k") {
+            @Override
+            void setUp() {
+                editor.clearMarkers();
+            }
+
+            @Override
+            void run() {
+                addMarkers(editor, MARKERS, 10);
+                render(editor);
+            }
+        });
+
+        cases.add(new PerfCase("clearMarkers.5k") {
+            @Override
+            void setUp() {
+                addMarkers(editor, MARKERS, 10);
+                render(editor);
+            }
+
+            @Override
+            void run() {
+                editor.clearMarkers();
+                render(editor);
+            }
+        });
+
+        cases.add(new PerfCase("clearGutterDecoration.50k") {
+            @Override
+            void setUp() {
+                final int[] rows = new int[MARKERS];
+                for (int i = 0; i < rows.length; ++i) {
+                    rows[i] = i * 10;
+                }
+                editor.addGutterDecoration(rows, GUTTER_STYLE);
+            }
+
+            @Override
+            void run() {
+                editor.clearGutterDecoration(GUTTER_STYLE);
+                render(editor);
+            }
+        });
+
+        cases.add(new PerfCase("contextMenu.hitTest.5k") {
+            @Override
+            void setUp() {
+                editor.clearMarkers();
+                // Pack the markers into the rows that are displayed, so they are all in the DOM
+                addMarkers(editor, MARKERS, 0);
+                render(editor);
+            }
+
+            @Override
+            void run() {
+                // Right click the gutter, where there are no markers, so every marker is hit tested
+                hitTest(editor);
+            }
+
+            @Override
+            void tearDown() {
+                editor.clearMarkers();
+            }
+
+            @Override
+            boolean isSupported() {
+                return AceEditor.isFeatureLoaded(AceEditorFeature.CONTEXT_MENU) && isJQueryLoaded();
+            }
+        });
+
+        cases.add(new PerfCase("attachDetach.10k") {
+            private AceEditor attached;
+
+            @Override
+            void setUp() {
+                attached = createEditor();
+                attached.setText(document10k);
+            }
+
+            @Override
+            void run() {
+                RootPanel.get().add(attached);
+                render(attached);
+                RootPanel.get().remove(attached);
+            }
+
+            @Override
+            void tearDown() {
+                attached = null;
+            }
+        });
+
+        editor.setText(document50k);
+        waitForContextMenu(cases, 0);
+    }
+
+    /**
+     * The context menu code is loaded from its own fragment when the editor is created. Wait for it, so the hit testing
+     * case is not skipped because of a slow download.
+     */
+    private void waitForContextMenu(final List<PerfCase> cases, final int waited) {
+        if (AceEditor.isFeatureLoaded(AceEditorFeature.CONTEXT_MENU) || waited >= FEATURE_TIMEOUT) {
+            runCases(cases);
+            return;
+        }
+
+        Scheduler.get().scheduleFixedDelay(new Scheduler.RepeatingCommand() {
+            @Override
+            public boolean execute() {
+                waitForContextMenu(cases, waited + 100);
+                return false;
+            }
+        }, 100);
+    }
+
+    private void runCases(final List<PerfCase> cases) {
+        Scheduler.get().scheduleFixedDelay(new Scheduler.RepeatingCommand() {
+            private int caseIndex = 0;
+            private int sample = 0;
+            private double[] times = new double[SAMPLES];
+
+            @Override
+            public boolean execute() {
+                if (caseIndex == cases.size()) {
+                    postResults();
+                    return false;
+                }
+
+                final PerfCase perfCase = cases.get(caseIndex);
+
+                if (!perfCase.isSupported()) {
+                    results.append("# ").append(perfCase.name).append(" was skipped\n");
+                    nextCase();
+                    return true;
+                }
+
+                perfCase.setUp();
+                final double start = now();
+                perfCase.run();
+                final double time = now() - start;
+                perfCase.tearDown();
+
+                if (sample >= WARMUP_SAMPLES) {
+                    times[sample - WARMUP_SAMPLES] = time;
+                }
+
+                ++sample;
+                if (sample == WARMUP_SAMPLES + SAMPLES) {
+                    Arrays.sort(times);
+                    results.append(perfCase.name).append('=').append(times[SAMPLES / 2]).append('\n');
+                    nextCase();
+                }
+
+                return true;
+            }
+
+            private void nextCase() {
+                ++caseIndex;
+                sample = 0;
+                times = new double[SAMPLES];
+            }
+        }, 10);
+    }
+
+    private void postResults() {
+        final String body = "# " + userAgent() + "\n" + results;
+        Document.get().getElementById("perf-results").setInnerText(body);
+
+        final RequestBuilder builder = new RequestBuilder(RequestBuilder.POST, RESULTS_URL);
+        builder.setHeader("Content-Type", "text/plain; charset=UTF-8");
+        try {
+            builder.sendRequest(body, new RequestCallback() {
+                @Override
+                public void onResponseReceived(final Request request, final Response response) {
+
+                }
+
+                @Override
+                public void onError(final Request request, final Throwable exception) {
+                    Document.get().setTitle("The results could not be posted");
+                }
+            });
+        } catch (final RequestException ex) {
+            Document.get().setTitle("The results could not be posted");
+        }
+    }
+
+    private static AceEditor createEditor() {
+        final AceEditor editor = new AceEditor(true);
+        editor.setWidth("800px");
+        editor.setHeight("600px");
+        editor.setMode(AceEditorMode.XML);
+        editor.setTheme(AceEditorTheme.CHROME);
+        editor.setFeatureEnabled(AceEditorFeature.SPELL_CHECKING, false);
+        editor.setFeatureEnabled(AceEditorFeature.CONDITIONAL_CHECKING, false);
+        editor.setFeatureEnabled(AceEditorFeature.TAG_MATCHING, false);
+        editor.setFeatureEnabled(AceEditorFeature.SPEC_MATCHING, false);
+        return editor;
+    }
+
+    private static native JavaScriptObject getAceEditor(final AceEditor editor) /*-{
+        return editor.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+    }-*/;
+
+    /**
+     * Render any changes synchronously, so the time taken to update the DOM is included in a sample.
+     */
+    private static native void render(final AceEditor editor) /*-{
+        var aceEditor = @edu.ycp.cs.dh.acegwt.perf.client.PerfSuite::getAceEditor(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditor;)(editor);
+        if (aceEditor != null) {
+            aceEditor.renderer.updateFull(true);
+        }
+    }-*/;
+
+    /**
+     * Add markers the same way the spell checking worker results are applied.
+     *
+     * @param count The number of markers
+     * @param rowSpacing The number of rows between markers, or 0 to pack them into the first rows of the document
+     */
+    private static native void addMarkers(final AceEditor editor, final int count, final int rowSpacing) /*-{
+        var aceEditor = @edu.ycp.cs.dh.acegwt.perf.client.PerfSuite::getAceEditor(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditor;)(editor);
+        if (aceEditor == null) {
+            return;
+        }
+
+        var Range = $wnd.ace.require("ace/range").Range;
+        var session = aceEditor.getSession();
+        var rowCount = session.getLength();
+        var markersPerRow = rowSpacing == 0 ? 100 : 1;
+        for (var i = 0; i < count; ++i) {
+            var row = (rowSpacing == 0 ? Math.floor(i / markersPerRow) : i * rowSpacing) % rowCount;
+            var start = (i % markersPerRow) * 2;
+            var end = start + 1;
+            session.addMarker(new Range(row, start, row, end), "misspelled-" + row + "-" + start + "-" + end, "typo", true);
+        }
+    }-*/;
+
+    private static native void hitTest(final AceEditor editor) /*-{
+        var contextMenuFunction = editor.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::contextMenuFunction;
+        var aceEditor = @edu.ycp.cs.dh.acegwt.perf.client.PerfSuite::getAceEditor(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditor;)(editor);
+        if (contextMenuFunction == null || aceEditor == null) {
+            return;
+        }
+
+        var rect = aceEditor.container.getBoundingClientRect();
+        contextMenuFunction({clientX: rect.left + 2, clientY: rect.top + 2});
+    }-*/;
+
+    private static native boolean isJQueryLoaded() /*-{
+        return $wnd.jQuery != undefined && $wnd.jQuery.contextMenu != undefined;
+    }-*/;
+
+    private static native double now() /*-{
+        return $wnd.performance && $wnd.performance.now ? $wnd.performance.now() : new Date().getTime();
+    }-*/;
+
+    private static native String userAgent() /*-{
+        return $wnd.navigator.userAgent;
+    }-*/;
+}
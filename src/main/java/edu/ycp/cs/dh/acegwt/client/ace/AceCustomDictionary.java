@@ -0,0 +1,151 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.web.bindery.event.shared.HandlerRegistration;
+
+/**
+ * A list of words that spell checking accepts on top of the Typo.js dictionaries, such as the product names and terms
+ * used by a user or a project.
+ *
+ * Dictionaries are shared by name, so a word added through one editor is accepted by every editor using the same
+ * dictionary. Adding or removing a word updates the running spelling workers without reloading their dictionaries, and
+ * only the rows containing the word are checked again. The words are saved in the browser's local storage, and are
+ * loaded again the next time the dictionary is used.
+ */
+public final class AceCustomDictionary {
+    /**
+     * The name of the dictionary used by editors that have not been given one
+     */
+    public static final String DEFAULT_NAME = "user";
+
+    private static final String STORAGE_KEY_PREFIX = "acegwt.dictionary.";
+    private static final Map<String, AceCustomDictionary> DICTIONARIES = new HashMap<String, AceCustomDictionary>();
+
+    /**
+     * Called when a word is added to or removed from a dictionary
+     */
+    interface ChangeHandler {
+        void onChange(String word, boolean added);
+    }
+
+    private final String name;
+    private final Set<String> words = new LinkedHashSet<String>();
+    private final List<ChangeHandler> handlers = new ArrayList<ChangeHandler>();
+
+    private AceCustomDictionary(final String name) {
+        this.name = name;
+
+        final String saved = load(STORAGE_KEY_PREFIX + name);
+        if (saved != null) {
+            for (final String word : saved.split("\n")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name The name of the dictionary, e.g. {@link #DEFAULT_NAME} or the name of a project
+     * @return The dictionary, loaded from local storage the first time it is used
+     */
+    public static AceCustomDictionary get(final String name) {
+        AceCustomDictionary dictionary = DICTIONARIES.get(name);
+        if (dictionary == null) {
+            dictionary = new AceCustomDictionary(name);
+            DICTIONARIES.put(name, dictionary);
+        }
+        return dictionary;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean contains(final String word) {
+        return words.contains(word);
+    }
+
+    /**
+     * @return The words in the order they were added
+     */
+    public List<String> getWords() {
+        return new ArrayList<String>(words);
+    }
+
+    /**
+     * Add a word. A word in lower case is also accepted when it is capitalized or in upper case.
+     *
+     * @return true if the word was not already in the dictionary
+     */
+    public boolean add(final String word) {
+        if (word == null || word.trim().isEmpty() || !words.add(word.trim())) {
+            return false;
+        }
+
+        changed(word.trim(), true);
+        return true;
+    }
+
+    /**
+     * @return true if the word was in the dictionary
+     */
+    public boolean remove(final String word) {
+        if (word == null || !words.remove(word.trim())) {
+            return false;
+        }
+
+        changed(word.trim(), false);
+        return true;
+    }
+
+    HandlerRegistration addChangeHandler(final ChangeHandler handler) {
+        handlers.add(handler);
+        return new HandlerRegistration() {
+            @Override
+            public void removeHandler() {
+                handlers.remove(handler);
+            }
+        };
+    }
+
+    private void changed(final String word, final boolean added) {
+        final StringBuilder saved = new StringBuilder();
+        for (final String savedWord : words) {
+            saved.append(savedWord).append('\n');
+        }
+        save(STORAGE_KEY_PREFIX + name, saved.toString());
+
+        for (final ChangeHandler handler : new ArrayList<ChangeHandler>(handlers)) {
+            handler.onChange(word, added);
+        }
+    }
+
+    /**
+     * @return The saved value, or null if there is none or local storage is not available
+     */
+    private static native String load(final String key) /*-{
+        try {
+            return $wnd.localStorage ? $wnd.localStorage.getItem(key) : null;
+        } catch (ex) {
+            // Local storage can be disabled, in which case the words are only kept until the page is closed
+            return null;
+        }
+    }-*/;
+
+    private static native void save(final String key, final String value) /*-{
+        try {
+            if ($wnd.localStorage) {
+                $wnd.localStorage.setItem(key, value);
+            }
+        } catch (ex) {
+            console.log("The custom dictionary could not be saved: " + ex);
+        }
+    }-*/;
+}
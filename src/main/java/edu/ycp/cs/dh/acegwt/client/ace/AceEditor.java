@@ -20,16 +20,26 @@
 
 package edu.ycp.cs.dh.acegwt.client.ace;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayString;
+import com.google.gwt.core.client.RunAsyncCallback;
 import com.google.gwt.editor.client.IsEditor;
 import com.google.gwt.editor.client.LeafValueEditor;
 import com.google.gwt.user.client.ui.Composite;
 import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.RequiresResize;
+import com.google.web.bindery.event.shared.HandlerRegistration;
 import edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB;
 import edu.ycp.cs.dh.acegwt.client.typo.TypoJS;
 
@@ -78,7 +88,18 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     private final String restUrl;
 
     private final String baseTypoJsUrl;
-    private final String typoJsLang;
+    /**
+     * The language of the text outside of any element with a lang or xml:lang attribute
+     */
+    private String typoJsLang;
+    /**
+     * The number of bytes the spelling worker's dictionaries may use, or 0 to use the worker's default
+     */
+    private final int dictionaryMemoryBudget;
+    /**
+     * The elements whose content is not spell checked, or null to use the worker's default
+     */
+    private final List<String> spellCheckingSkipElements;
     private final XMLElementDB xmlElementDB;
 
     private JavaScriptObject editor;
@@ -91,10 +112,32 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     
     private static final Logger logger = Logger.getLogger(AceEditor.class.getName());
 
+    /**
+     * The default number of characters that cached EditSessions may hold
+     */
+    private static final int DEFAULT_DOCUMENT_CACHE_BUDGET = 10 * 1024 * 1024;
+    /**
+     * The spell checking language used when none is set
+     */
+    private static final String DEFAULT_LANGUAGE = "en_US";
+
     /**
      * This value is used as a buffer to hold the text before the editor is created
      */
     private String text = null;
+    /**
+     * The text the row offsets in textLineStarts and textLineEnds were found for, so the buffered text is only split
+     * into rows once
+     */
+    private String indexedText = null;
+    /**
+     * The offset of the start of each row of indexedText
+     */
+    private int[] textLineStarts;
+    /**
+     * The offset of the end of each row of indexedText, before its line separator
+     */
+    private int[] textLineEnds;
     /**
      * This value is used as a buffer to hold the theme before the editor is created
      */
@@ -147,6 +190,10 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      * This value is used as a buffer to hold the theme state before the editor is created
      */
     private String themeName;
+    /**
+     * This value is used as a buffer to hold the mode state before the editor is created
+     */
+    private String modeName;
     /**
      * This value is used as a buffer to hold the font size state before the editor is created
      */
@@ -170,10 +217,82 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     private boolean enableConditionalChecking = true;
     private boolean enableAutoComplete = false;
     private boolean autoCompleteInitialised = false;
+    /**
+     * This value is used as a buffer to hold the context menu state before the editor is created
+     */
+    private boolean enableContextMenu = true;
+    /**
+     * The features that have been started for the current ACE editor
+     */
+    private final Set<AceEditorFeature> startedFeatures = EnumSet.noneOf(AceEditorFeature.class);
+    /**
+     * Incremented each time an ACE editor is created, so a feature that finishes loading after its editor was destroyed
+     * is not started on a later editor
+     */
+    private int editorGeneration = 0;
+    /**
+     * The features whose code has been downloaded, shared by all editors
+     */
+    private static final Set<AceEditorFeature> loadedFeatures = EnumSet.noneOf(AceEditorFeature.class);
+    /**
+     * When true the ACE editor, its session and its web workers are kept alive while the widget is detached from the DOM.
+     * The editor is then only cleaned up by calling {@link #dispose()}.
+     */
+    private boolean keepAlive = false;
+    /**
+     * The key of the document being displayed when the multi-document API is used, or null otherwise
+     */
+    private String documentKey;
+    /**
+     * A LRU cache of ACE EditSessions, keyed by document key
+     */
+    private JavaScriptObject documentCache;
+    /**
+     * The number of characters the sessions held in the document cache may use, not counting the session being displayed
+     */
+    private int documentCacheBudget = DEFAULT_DOCUMENT_CACHE_BUDGET;
+    /**
+     * When true a read only, statically highlighted placeholder is displayed when the widget is attached, and the ACE
+     * editor is only created once the widget scrolls into view or receives the focus
+     */
+    private boolean lazy = false;
+    /**
+     * The placeholder displayed while the creation of the editor is deferred
+     */
+    private JavaScriptObject placeholder;
+    /**
+     * The number of changes made to the text, and the state of the displayed document, as {revision, document}.
+     * document holds the number of changes made to that document, the hashes of its rows, and the change count and
+     * fingerprint it was last marked clean at (see {@link #createTextStateNative()}). Each cached document keeps its own
+     * state, which is displayed again by {@link #switchDocument(String)}.
+     */
+    private JavaScriptObject revisions;
+    /**
+     * The text last returned by the editor of {@link #asEditor()}, with the revision it was read at
+     */
+    private String editorValue;
+    private int editorValueRevision = -1;
     /**
      * The current condition used to include or exclude xml elements
      */
     private String condition;
+    /**
+     * The conditions whose exclusions are found in the background, so switching to them is displayed immediately
+     */
+    private final List<String> conditionProfiles = new ArrayList<String>();
+    /**
+     * The number of conditions whose exclusions are cached for each document
+     */
+    private static final int CONDITION_CACHE_SIZE = 8;
+    /**
+     * The number of rows {@link #setText(String, boolean)} adds or removes before it stops looking for the
+     * smallest edit
+     */
+    private static final int MAX_DIFF_EDITS = 1000;
+    /**
+     * Changes to more rows than this drop the hashes of the rows, rather than updating them
+     */
+    private static final int MAX_REHASHED_ROWS = 1000;
 
     /**
      * The spell checking web worker
@@ -191,12 +310,32 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      * The conditional matching web worker
      */
     private JavaScriptObject conditionalMatchingWorker;
+    /**
+     * The fused analysis worker, which is also the spell checking and conditional matching worker when it is used
+     */
+    private JavaScriptObject analysisWorker;
+    /**
+     * Runs the analysis passes that share the fused analysis worker
+     */
+    private JavaScriptObject analysisInterval;
 
     private JavaScriptObject contextMenu;
 
     private JavaScriptObject liveAutoCompleteFunction;
     private JavaScriptObject contextMenuFunction;
     private JavaScriptObject codeFoldingFunction;
+    /**
+     * The performance metrics recorded by this editor
+     */
+    private final AceEditorMetrics metrics = new AceEditorMetrics();
+    /**
+     * The words spell checking accepts on top of the dictionaries
+     */
+    private AceCustomDictionary customDictionary;
+    /**
+     * Updates the spelling worker when a word is added to or removed from the custom dictionary
+     */
+    private HandlerRegistration customDictionaryRegistration;
 
     /**
      * This constructor will only work if the <code>.ace_editor</code> CSS class is set with
@@ -234,7 +373,12 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         restUrl = data == null ? null : data.getRestUrl();
         baseTypoJsUrl = data == null ? null : data.getTypoJsBaseUrl();
         typoJsLang = data == null ? null : data.getTypeJsLang();
+        dictionaryMemoryBudget = data == null ? 0 : data.getDictionaryMemoryBudget();
+        spellCheckingSkipElements = data == null || data.getSpellCheckingSkipElements() == null
+                ? null : new ArrayList<String>(data.getSpellCheckingSkipElements());
         xmlElementDB = data == null ? null : data.getXMLElementDB();
+        customDictionary = data == null || data.getCustomDictionary() == null
+                ? AceCustomDictionary.get(AceCustomDictionary.DEFAULT_NAME) : data.getCustomDictionary();
         this.enableTagMatching = enableTagMatching;
         this.enableSpecMatching = enableSpecMatching;
 
@@ -261,6 +405,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         }
 
         initWidget(html);
+        markClean();
     }
 
     private native void initFunctions() /*-{
@@ -335,12 +480,11 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     private native void startEditorNative() /*-{
 
-		console.log("ENTER AceEditor.startEditorNative()");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.startEditorNative()");
 
         var text = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::text;
         var themeName = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::themeName;
-        var mode = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::mode;
-        var shortModeName = mode ? mode.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMode::getName()() : null;
+        var shortModeName = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::modeName;
         var readOnly = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::readOnly;
         var useSoftTabs = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::useSoftTabs;
         var tabSize = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tabSize;
@@ -351,139 +495,128 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         var showInvisibles = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::showInvisibles;
         var fontSize = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::fontSize;
         var fontFamily = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::fontFamily;
-        var enableTagMatching = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableTagMatching;
-        var enableSpecMatching = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableSpecMatching;
         var enableBehaviours = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableBehaviours;
         var showGutter = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::showGutter;
-        var enableSpellChecking = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableSpellChecking;
-        var enableConditionalChecking = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableConditionalChecking;
-        var enableAutoComplete = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableAutoComplete;
         var codeFoldingRegex = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::codeFoldingRegex;
         var codeFoldingRegexFlags = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::codeFoldingRegexFlags;
+        var documentKey = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentKey;
 
 		if ($wnd.ace == undefined) {
 			$wnd.alert("window.ace is undefined! Please make sure you have included the appropriate JavaScript files.");
 			return;
 		}
 
-		console.log("\tAssign ACE editor variable");
+		var span = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("startEditor", this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId);
+
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\tAssign ACE editor variable");
 		var editor = $wnd.ace.edit(this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId);
-		editor.getSession().setUseWorker(false);
 		this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor = editor;
 
-		console.log("\tSetting Options");
+		// Reuse the cached session of the current document, if there is one
+		var cachedSession = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getCachedSessionNative(Ljava/lang/String;)(documentKey);
+		if (cachedSession != null) {
+			@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\tUsing cached session");
+			editor.setSession(cachedSession);
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentSwitchedNative(Ljava/lang/String;)(documentKey);
+		}
+		editor.getSession().setUseWorker(false);
+
+		// Count the changes to the text, keeping the hashes of the changed rows up to date
+		var revisions = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()();
+		editor.on("change", function(e) {
+			@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::textChanged(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(revisions, editor.getSession(), e.data);
+		});
+
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\tSetting Options");
 		// Set code folding (choose from manual, markbegin, markbeginend)
 		editor.getSession().setFoldStyle("markbeginend");
 
 		// Set theme
 		if (themeName != null)
 		{
-			console.log("\t\tSetting Theme");
-			editor.setTheme("ace/theme/" + themeName);
+			@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Theme");
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::applyThemeNative(Ljava/lang/String;)(themeName);
 		}
 
 		// Set mode
 		if (shortModeName != null)
 		{
-			console.log("\t\tSetting Mode");
-			editor.getSession().setMode("ace/mode/" + shortModeName);
+			@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Mode");
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::applyModeNative(Ljava/lang/String;)(shortModeName);
 		}
 
 		// Set read only
-		console.log("\t\tSetting Read Only");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Read Only");
 		editor.setReadOnly(readOnly);
 
 		// Set soft tabs
-		console.log("\t\tSetting Soft Tabs");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Soft Tabs");
 		editor.getSession().setUseSoftTabs(useSoftTabs);
 
 		// Set the tab size
-		console.log("\t\tSetting Tab Size");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Tab Size");
 		editor.getSession().setTabSize(tabSize);
 
 		// Set horizontal scroll bar
-		console.log("\t\tSetting Horizontal Scroll Bar");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Horizontal Scroll Bar");
 		editor.renderer.setHScrollBarAlwaysVisible(hScrollBarAlwaysVisible);
 
 		// Show gutter
-		console.log("\t\tSetting Gutter");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Gutter");
 		editor.renderer.setShowGutter(showGutter);
 
 		// Highlight selected word
-		console.log("\t\tSetting Highlight Word Select");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Highlight Word Select");
 		editor.setHighlightSelectedWord(highlightSelectedWord);
 
 		// Set print margin
-		console.log("\t\tSetting Print Margin");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Print Margin");
 		editor.renderer.setShowPrintMargin(showPrintMargin);
 
 		// Set wrapping. 
-		console.log("\t\tSetting User Wrap");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting User Wrap");
         editor.getSession().setUseWrapMode(false);
 
         if (userWrap) {
             editor.getSession().setUseWrapMode(true);
         }
 
-        console.log("\t\tSetting Auto Completion");
-        if (enableAutoComplete) {
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::setAutoCompleteEnabledNative(Z)(enableAutoComplete);
-        }
-
         // Set wrapping.
-        console.log("\t\tSetting Behaviours");
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Behaviours");
         editor.setBehavioursEnabled(enableBehaviours);
 
         // Set font size
-        console.log("\t\tSetting Font Size");
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Font Size");
         if (fontSize != null) {
             this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::setFontSizeNative(Ljava/lang/String;)(fontSize);
         }
 
         // Set font family.
-        console.log("\t\tSetting Font Family");
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Font Family");
         if (fontFamily != null) {
             this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::setFontFamilyNative(Ljava/lang/String;)(fontFamily);
         }
 
 		// Show invisibles
-		console.log("\t\tSetting Show Invisible Characters");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Show Invisible Characters");
 		editor.setShowInvisibles(showInvisibles);
 
         // Set text
-        if (text != null)
+        if (cachedSession == null && text != null)
         {
-            console.log("\t\tSetting Text");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tSetting Text");
             editor.getSession().setValue(text);
         }
 
-        console.log("\t\tEnabling Spell Checking");
-        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::setupContextMenu()();
-
-        if (enableSpellChecking) {
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableSpellCheckingEnabledNative()();
-        }
-
-        console.log("\t\tEnabling Conditional Checking");
-        if (enableConditionalChecking) {
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableConditionalMatchingNative()();
+        if (cachedSession == null && documentKey != null) {
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::cacheSessionNative(Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(documentKey, editor.getSession());
         }
 
-        if (enableTagMatching) {
-			console.log("\t\tEnabling Tag Matching");
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableTagMatching()();
-        }
-
-		if (enableSpecMatching) {
-			console.log("\t\tEnabling Spec Matching");
-			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableSpecMatching()();
-		}
-
         if (codeFoldingRegex) {
             this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableAutoCodeFoldingNative(Ljava/lang/String;Ljava/lang/String;)(codeFoldingRegex, codeFoldingRegexFlags);
         }
 
-        console.log("\t\tEnabling Snippets");
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\t\tEnabling Snippets");
         this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::enableSnippets()();
 
         // I have been noticing sporadic failures of the editor
@@ -492,52 +625,450 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         //    https://groups.google.com/group/ace-discuss/browse_thread/thread/237262b521dcea33
         $wnd.setTimeout(function(editor) {
             return function() {
-                console.log("\tForce resize and redisplay");
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("\tForce resize and redisplay");
                 editor.resize();
             }
         }(editor), 0);
 
-		console.log("EXIT AceEditor.startEditorNative()");
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(span, editor.getSession().getLength());
+
+		@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.startEditorNative()");
 
     }-*/;
     
     /**
      * Called before the widget is removed from the DOM. Save the state of the text, and set
-     * wrapping mode to false to prevent a lock up with Chrome 23
+     * wrapping mode to false to prevent a lock up with Chrome 23. In keep alive mode the editor
+     * survives the detach, so nothing needs to be saved.
      */
     @Override
     protected void onUnload()
     {
         logger.log(Level.INFO, "ENTER AceEditor.onUnload()");
         super.onUnload();
-        this.text = this.getText();
-        this.setUseWrapModeNative(false);
+        if (!keepAlive) {
+            this.text = this.getText();
+            this.setUseWrapModeNative(false);
+        }
         logger.log(Level.INFO, "EXIT AceEditor.onUnload()");
     }
     
     /**
-     * Called after the widget is removed from the DOM. Clean up the ACE editor.
+     * Called after the widget is removed from the DOM. Clean up the ACE editor, unless keep alive mode is enabled.
      */
     @Override 
     protected void onDetach()
     {
         logger.log(Level.INFO, "ENTER AceEditor.onDetach()");
         super.onDetach();
-        destroy();
+        removePlaceholderNative();
+        if (!keepAlive) {
+            destroy();
+        }
         logger.log(Level.INFO, "EXIT AceEditor.onDetach()");
     }
     
-    /** Called after a the widget is added to the DOM. Add the ACE editor */
+    /**
+     * Called after a the widget is added to the DOM. Add the ACE editor, reattach the one that was kept alive, or in
+     * lazy mode display a placeholder until the editor is needed.
+     */
     @Override
     protected void onLoad()
     {
         logger.log(Level.INFO, "ENTER AceEditor.onLoad()");
         super.onLoad();
-        initFunctions();
-        startEditorNative();
+        if (isEditorCreated()) {
+            // Font changes made while detached could not be applied to the element, so apply them now
+            if (fontSize != null) {
+                setFontSizeNative(fontSize);
+            }
+            if (fontFamily != null) {
+                setFontFamilyNative(fontFamily);
+            }
+            reattachEditorNative();
+        } else if (lazy) {
+            showPlaceholderNative();
+        } else {
+            createEditor();
+        }
         logger.log(Level.INFO, "EXIT AceEditor.onLoad()");
     }
 
+    private void createEditor() {
+        ++editorGeneration;
+        startedFeatures.clear();
+        startEditorNative();
+
+        // The context menu, analysis and auto complete code is loaded once the plain editor is up
+        for (final AceEditorFeature feature : AceEditorFeature.values()) {
+            if (isFeatureEnabled(feature)) {
+                startFeature(feature);
+            }
+        }
+    }
+
+    /**
+     * Enable or disable a feature. Enabling a feature on an editor that has been created downloads its code if needed
+     * and starts it. Apart from auto complete, disabling a feature takes effect the next time the editor is created.
+     *
+     * @param feature The feature
+     * @param enabled true to enable the feature, false to disable it
+     */
+    public void setFeatureEnabled(final AceEditorFeature feature, final boolean enabled) {
+        switch (feature) {
+            case CONTEXT_MENU:
+                enableContextMenu = enabled;
+                break;
+            case SPELL_CHECKING:
+                enableSpellChecking = enabled;
+                break;
+            case CONDITIONAL_CHECKING:
+                enableConditionalChecking = enabled;
+                break;
+            case TAG_MATCHING:
+                enableTagMatching = enabled;
+                break;
+            case SPEC_MATCHING:
+                enableSpecMatching = enabled;
+                break;
+            case AUTO_COMPLETE:
+                setAutoCompleteEnabled(enabled);
+                return;
+        }
+
+        if (enabled && isEditorCreated()) {
+            startFeature(feature);
+        }
+    }
+
+    public boolean isFeatureEnabled(final AceEditorFeature feature) {
+        switch (feature) {
+            case CONTEXT_MENU:
+                return enableContextMenu;
+            case SPELL_CHECKING:
+                return enableSpellChecking;
+            case CONDITIONAL_CHECKING:
+                return enableConditionalChecking;
+            case TAG_MATCHING:
+                return enableTagMatching;
+            case SPEC_MATCHING:
+                return enableSpecMatching;
+            case AUTO_COMPLETE:
+                return enableAutoComplete;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the code for the feature has been downloaded
+     */
+    public static boolean isFeatureLoaded(final AceEditorFeature feature) {
+        return loadedFeatures.contains(feature);
+    }
+
+    /**
+     * Download the code for a feature, if needed, and start it on the current editor. Each feature has its own split
+     * point, and the methods that implement it are only called from within it, so the GWT compiler moves them out of
+     * the initial download.
+     */
+    private void startFeature(final AceEditorFeature feature) {
+        if (startedFeatures.contains(feature)) {
+            return;
+        }
+        startedFeatures.add(feature);
+
+        // Each split point calls its feature directly, so the code of each feature ends up in its own fragment
+        switch (feature) {
+            case CONTEXT_MENU:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            setupContextMenu();
+                        }
+                    }
+                });
+                break;
+            case SPELL_CHECKING:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            enableSpellCheckingEnabledNative();
+                        }
+                    }
+                });
+                break;
+            case CONDITIONAL_CHECKING:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            enableConditionalMatchingNative();
+                        }
+                    }
+                });
+                break;
+            case TAG_MATCHING:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            enableTagMatching();
+                        }
+                    }
+                });
+                break;
+            case SPEC_MATCHING:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            enableSpecMatching();
+                        }
+                    }
+                });
+                break;
+            case AUTO_COMPLETE:
+                GWT.runAsync(new FeatureCallback(feature) {
+                    @Override
+                    public void onSuccess() {
+                        if (loaded()) {
+                            if (liveAutoCompleteFunction == null) {
+                                initFunctions();
+                            }
+                            setAutoCompleteEnabledNative(enableAutoComplete);
+                        }
+                    }
+                });
+                break;
+        }
+    }
+
+    /**
+     * Handles the download of the code for a feature.
+     */
+    private abstract class FeatureCallback implements RunAsyncCallback {
+        private final AceEditorFeature feature;
+        private final int generation = editorGeneration;
+
+        protected FeatureCallback(final AceEditorFeature feature) {
+            this.feature = feature;
+        }
+
+        /**
+         * Record that the code for the feature has been downloaded.
+         *
+         * @return true if the editor the feature was requested for still exists, and the feature should be started
+         */
+        protected boolean loaded() {
+            loadedFeatures.add(feature);
+            return generation == editorGeneration && isEditorCreated();
+        }
+
+        @Override
+        public void onFailure(final Throwable reason) {
+            logger.log(Level.SEVERE, "The code for the " + feature + " feature could not be loaded", reason);
+            if (generation == editorGeneration) {
+                startedFeatures.remove(feature);
+            }
+        }
+    }
+
+    /**
+     * Replaces the placeholder with the ACE editor. The text, mode, theme and options that were set while the
+     * placeholder was displayed are applied as the editor is created.
+     *
+     * @param focus true if the editor should take the focus once it is created
+     */
+    private void createEditorFromPlaceholder(final boolean focus) {
+        if (isEditorCreated() || !isAttached()) {
+            return;
+        }
+
+        removePlaceholderNative();
+        createEditor();
+
+        if (focus) {
+            focus();
+        }
+    }
+
+    /**
+     * Enable or disable lazy mode. This must be set before the widget is attached. In lazy mode a read only, statically
+     * highlighted copy of the text is displayed, and the ACE editor (along with its context menu, snippets and workers) is
+     * only created when the widget scrolls into view or receives the focus. The static highlighting requires that
+     * ext-static_highlight.js be included in the main HTML file. If it is not, the editor is created immediately.
+     *
+     * @param lazy true to defer the creation of the editor, false otherwise
+     */
+    public void setLazy(final boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Display the placeholder, and create the editor when the placeholder scrolls into view or receives the focus.
+     */
+    private native void showPlaceholderNative() /*-{
+        var elementId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
+        var element = $doc.getElementById(elementId);
+        var highlighter = $wnd.ace == undefined ? null : $wnd.ace.require("ace/ext/static_highlight");
+
+        if (element == null || !highlighter) {
+            console.log("ext-static_highlight.js is not loaded. The editor will be created immediately.");
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createEditor()();
+            return;
+        }
+
+        var placeholder = {element: element, observer: null};
+
+        placeholder.activate = function(me) {
+            return function(e) {
+                me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createEditorFromPlaceholder(Z)(e.type != "intersect");
+            };
+        }(this);
+
+        // Allow the placeholder to take the focus, which is passed on to the editor once it is created
+        element.tabIndex = 0;
+        element.addEventListener("focus", placeholder.activate);
+        element.addEventListener("mousedown", placeholder.activate);
+
+        if ($wnd.IntersectionObserver) {
+            placeholder.observer = new $wnd.IntersectionObserver(function(entries) {
+                for (var i = 0, entriesLength = entries.length; i < entriesLength; ++i) {
+                    if (entries[i].isIntersecting) {
+                        placeholder.activate({type: "intersect"});
+                        return;
+                    }
+                }
+            });
+            placeholder.observer.observe(element);
+        }
+
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder = placeholder;
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::renderPlaceholderNative()();
+    }-*/;
+
+    /**
+     * Render the current text, mode and theme into the placeholder, if one is displayed.
+     */
+    private native void renderPlaceholderNative() /*-{
+        var placeholder = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder;
+        if (placeholder == null) {
+            return;
+        }
+
+        var text = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getText()();
+        var themeName = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::themeName;
+        var shortModeName = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::modeName || "text";
+        var showGutter = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::showGutter;
+
+        var highlighter = $wnd.ace.require("ace/ext/static_highlight");
+        var dom = $wnd.ace.require("ace/lib/dom");
+        var me = this;
+
+        var render = function() {
+            highlighter.render(text || "", "ace/mode/" + shortModeName, "ace/theme/" + (themeName || "textmate"), 1, !showGutter,
+                function(highlighted) {
+                    // The editor may have replaced the placeholder while the mode and theme were loading
+                    if (me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder !== placeholder) {
+                        return;
+                    }
+
+                    dom.importCssString(highlighted.css, "ace_highlight");
+                    placeholder.element.innerHTML = "<div style=\"width: 100%; height: 100%; overflow: auto;\">" + highlighted.html + "</div>";
+                });
+        };
+
+        // Render once both the mode and the theme scripts are available
+        var pending = 2;
+        var loaded = function(success) {
+            if (--pending == 0) {
+                render();
+            }
+        };
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)("mode", shortModeName, loaded);
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)("theme", themeName || "textmate", loaded);
+    }-*/;
+
+    private native void removePlaceholderNative() /*-{
+        var placeholder = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder;
+        if (placeholder == null) {
+            return;
+        }
+
+        if (placeholder.observer != null) {
+            placeholder.observer.disconnect();
+        }
+        placeholder.element.removeEventListener("focus", placeholder.activate);
+        placeholder.element.removeEventListener("mousedown", placeholder.activate);
+        placeholder.element.removeAttribute("tabIndex");
+
+        // ACE uses the content of the element as the initial text of the editor, so it has to be empty
+        placeholder.element.innerHTML = "";
+
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder = null;
+    }-*/;
+
+    /**
+     * @return true if the underlying ACE editor currently exists
+     */
+    private boolean isEditorCreated() {
+        return editor != null;
+    }
+
+    /**
+     * Called when a widget whose editor was kept alive is added back to the DOM. The session, undo stack, folds,
+     * markers and workers are all still in place, so all that is needed is for the renderer to pick up the new size.
+     */
+    private native void reattachEditorNative() /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        if (editor != null) {
+            editor.resize(true);
+            editor.renderer.updateFull();
+        } else {
+            console.log("editor == null. reattachEditorNative() was not called successfully.");
+        }
+    }-*/;
+
+    /**
+     * Enable or disable keep alive mode. When enabled, removing the widget from the DOM does not destroy the ACE editor.
+     * The EditSession (including the undo stack, folds and markers) and the web workers are retained, and adding the widget
+     * back to the DOM reattaches the existing editor instead of building a new one. Call {@link #dispose()} to release the editor
+     * once it is no longer required. Disabling keep alive mode while the widget is detached releases the kept alive editor
+     * straight away.
+     *
+     * @param keepAlive true to keep the editor alive while the widget is detached, false otherwise
+     */
+    public void setKeepAlive(final boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        if (!keepAlive && !isAttached()) {
+            // No detach is coming to clean up the editor that was kept alive
+            dispose();
+        }
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Releases the ACE editor and its web workers. This is only required in keep alive mode, as otherwise the editor is
+     * cleaned up when the widget is removed from the DOM. If the widget is attached when this is called, the editor
+     * will be created again the next time the widget is added to the DOM.
+     */
+    public void dispose() {
+        if (isEditorCreated()) {
+            this.text = this.getText();
+            destroy();
+        }
+    }
+
     /**
      * Call this to force the editor contents to be redisplayed. There seems to be a problem when an AceEditor is embedded in a
      * LayoutPanel: the editor contents don't appear, and it refuses to accept focus and mouse events, until the browser window
@@ -545,7 +1076,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     public native void redisplay() /*-{
 		try {
-            console.log("ENTER AceEditor.redisplay()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.redisplay()");
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
 
             if (editor != null) {
@@ -557,7 +1088,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 console.log("editor == null. redisplay() was not called successfully.");
             }
         } finally {
-            console.log("EXIT AceEditor.redisplay()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.redisplay()");
         }
     }-*/;
 
@@ -566,15 +1097,18 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     public native void destroy() /*-{
 		try {
-            console.log("ENTER AceEditor.destroy()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.destroy()");
 
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+            var span = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("destroy", this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId);
+            var lines = editor != null ? editor.getSession().getLength() : 0;
             var editorElementId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
             var spellcheckInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellcheckInterval;
             var checkConditionsInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval;
             var matchTagsInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::matchTagsInterval;
             var spellingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
             var conditionalMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker;
+            var analysisInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisInterval;
             var tagMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tagMatchingWorker;
             var specMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::specMatchingWorker;
             var contextMenu = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::contextMenu;
@@ -592,6 +1126,11 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval = null;
             }
 
+            if (analysisInterval != null) {
+                $wnd.clearInterval(analysisInterval);
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisInterval = null;
+            }
+
             // clean up pending operations
             if (matchTagsInterval != null) {
                 $wnd.clearInterval(matchTagsInterval);
@@ -601,6 +1140,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
             if (spellingWorker != null) {
                 spellingWorker.terminate();
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker = null;
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::unwatchCustomDictionary()();
             }
 
             if (conditionalMatchingWorker != null) {
@@ -608,6 +1148,9 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker = null;
             }
 
+            // The fused analysis worker was terminated as the spelling or conditional matching worker
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisWorker = null;
+
             if (tagMatchingWorker != null) {
                 tagMatchingWorker.terminate();
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tagMatchingWorker = null;
@@ -619,9 +1162,12 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 			}
 
             if (contextMenuFunction != null) {
-                // Unbind the context menu event
-                var editorEle = $wnd.document.getElementById(editorElementId);
-                editorEle.removeEventListener("contextmenu", contextMenuFunction);
+                // Unbind the context menu event. The editor container is used when available, as a kept alive editor
+                // may be disposed of while it is not in the document.
+                var editorEle = editor != null ? editor.container : $wnd.document.getElementById(editorElementId);
+                if (editorEle != null) {
+                    editorEle.removeEventListener("contextmenu", contextMenuFunction);
+                }
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::contextMenuFunction = null;
             }
 
@@ -631,11 +1177,16 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::contextMenu = null;
             }
 
-            // Disable auto complete
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::setAutoCompleteEnabledNative(Z)(false);
-            if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::liveAutoCompleteFunction != null) {
+            // Disable auto complete. This is done here rather than through setAutoCompleteEnabledNative(), which is
+            // only loaded with the auto complete feature.
+            var liveAutoCompleteFunction = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::liveAutoCompleteFunction;
+            if (liveAutoCompleteFunction != null) {
+                if (editor != null) {
+                    editor.commands.removeListener("afterExec", liveAutoCompleteFunction);
+                }
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::liveAutoCompleteFunction = null;
             }
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::autoCompleteInitialised = false;
 
             // Cleanup the auto code folding
             if (codeFoldingFunction != null) {
@@ -647,19 +1198,30 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::clearAnnotations()();
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::clearMarkers()();
 
+                // The analysis markers were just removed, so the session will need to be analysed again if it is reused
+                editor.getSession().aceGwtAnalysis = null;
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::clearGauges()();
+
                 editor.destroy();
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor = null;
             } else {
                 console.log("editor == null. destroy() was not called successfully.");
             }
         } finally {
-            console.log("EXIT AceEditor.destroy()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(span, lines);
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.destroy()");
         }
 
 
     }-*/;
     
     public native void focus() /*-{
+        if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::placeholder != null) {
+            // Create the editor now, which will then take the focus
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createEditorFromPlaceholder(Z)(true);
+            return;
+        }
+
         var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
         if (editor != null) {
             editor.focus();
@@ -706,10 +1268,27 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
 		this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::themeName = themeName;
 		if (editor != null) {
-			editor.setTheme("ace/theme/" + themeName);
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::applyThemeNative(Ljava/lang/String;)(themeName);
+        } else {
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::renderPlaceholderNative()();
         }
     }-*/;
 
+    /**
+     * Set the theme once its script has been loaded by the {@link AceModuleLoader}. If the theme is changed again
+     * while the script is loading, only the latest theme is applied.
+     */
+    private native void applyThemeNative(final String themeName) /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        editor.aceGwtTheme = themeName;
+
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)("theme", themeName, function(success) {
+            if (success && editor.aceGwtTheme === themeName) {
+                editor.setTheme("ace/theme/" + themeName);
+            }
+        });
+    }-*/;
+
     /**
      * Set the mode.
      * 
@@ -724,6 +1303,21 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         return mode;
     }
 
+    /**
+     * Set the mode once its script has been loaded by the {@link AceModuleLoader}. If the mode is changed again
+     * while the script is loading, only the latest mode is applied.
+     */
+    private native void applyModeNative(final String shortModeName) /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        editor.aceGwtMode = shortModeName;
+
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)("mode", shortModeName, function(success) {
+            if (success && editor.aceGwtMode === shortModeName) {
+                editor.getSession().setMode("ace/mode/" + shortModeName);
+            }
+        });
+    }-*/;
+
     /**
      * Set the mode by name.
      * 
@@ -731,9 +1325,11 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     public native void setModeByName(String shortModeName) /*-{
 		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+		this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::modeName = shortModeName;
 		if (editor != null) {
-			var modeName = "ace/mode/" + shortModeName;
-			editor.getSession().setMode(modeName);
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::applyModeNative(Ljava/lang/String;)(shortModeName);
+		} else {
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::renderPlaceholderNative()();
 		}
     }-*/;
 
@@ -811,27 +1407,422 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     }-*/;
 
     /**
-     * Get the complete text in the editor as a String.
+     * Get the complete text in the editor as a String. If the editor has not been created, the text of the
+     * cached session of the current document is returned.
      * 
      * @return the text in the editor
      */
     private native String getTextNative() /*-{
-		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
-		if (editor != null)
-			return editor.getSession().getValue();
-		return null;
+		var session = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getTextSessionNative()();
+		return session != null ? session.getValue() : null;
     }-*/;
 
-    public String getText() {
+    /**
+     * @return The session of the editor, or if the editor has not been created, the cached session of the current
+     *         document. null if there is neither.
+     */
+    private native JavaScriptObject getTextSessionNative() /*-{
+		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+		if (editor != null)
+			return editor.getSession();
+
+		var documentKey = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentKey;
+		return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getCachedSessionNative(Ljava/lang/String;)(documentKey);
+    }-*/;
+
+    public String getText() {
         final String thisText = getTextNative();
         return thisText == null ? this.text : thisText;
     };
 
+    /**
+     * Get the text of some of the rows in the editor. Only those rows are copied out of the document, so this is much
+     * cheaper than {@link #getText()} on large documents. Rows outside of the document are ignored.
+     *
+     * @param rowStart The first row, starting at 0
+     * @param rowEnd The last row (inclusive)
+     * @return The text of the rows, separated by the document's new line character, or by the text's own line
+     *         separators if the editor has not been created
+     */
+    public String getText(final int rowStart, final int rowEnd) {
+        final int start = Math.max(rowStart, 0);
+        final JavaScriptObject session = getTextSessionNative();
+        if (session != null) {
+            return getLinesNative(session, start, rowEnd);
+        }
+
+        indexTextLines();
+        final int end = Math.min(rowEnd, textLineStarts.length - 1);
+        return start <= end ? indexedText.substring(textLineStarts[start], textLineEnds[end]) : "";
+    }
+
+    /**
+     * @param row The row, starting at 0
+     * @return The text of the row, without its new line character, or an empty string if the row is outside of the
+     *         document
+     */
+    public String getLine(final int row) {
+        final JavaScriptObject session = getTextSessionNative();
+        if (session != null) {
+            return getLineNative(session, row);
+        }
+
+        indexTextLines();
+        if (row < 0 || row >= textLineStarts.length) {
+            return "";
+        }
+        return indexedText.substring(textLineStarts[row], textLineEnds[row]);
+    }
+
+    /**
+     * @return The number of rows in the editor, found without copying its text
+     */
+    public int getLineCount() {
+        final JavaScriptObject session = getTextSessionNative();
+        if (session != null) {
+            return getLineCountNative(session);
+        }
+
+        indexTextLines();
+        return textLineStarts.length;
+    }
+
+    /**
+     * Read the text of the editor a number of rows at a time, so it can be streamed somewhere else without copying
+     * the whole document into one string. Joining the chunks gives the same text as {@link #getText()}: every chunk
+     * but the last ends with a new line character. Each chunk is read from the document when it is needed, so the
+     * document should not be edited while the chunks are read.
+     *
+     * @param rowsPerChunk The number of rows in each chunk
+     * @return The chunks of text
+     */
+    public Iterable<String> getTextChunks(final int rowsPerChunk) {
+        final int chunkRows = Math.max(rowsPerChunk, 1);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int nextRow = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return nextRow < getLineCount();
+                    }
+
+                    @Override
+                    public String next() {
+                        final int lineCount = getLineCount();
+                        if (nextRow >= lineCount) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final int firstRow = nextRow;
+                        final int lastRow = Math.min(firstRow + chunkRows, lineCount) - 1;
+                        nextRow = lastRow + 1;
+
+                        final JavaScriptObject session = getTextSessionNative();
+                        if (session == null) {
+                            // Keep the text's own line separators, including the one ending the chunk
+                            return indexedText.substring(textLineStarts[firstRow],
+                                    nextRow < lineCount ? textLineStarts[nextRow] : indexedText.length());
+                        }
+
+                        final String chunk = getLinesNative(session, firstRow, lastRow);
+                        return nextRow < lineCount ? chunk + getNewLineCharacterNative(session) : chunk;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Find the offsets of the rows of the buffered text, when there is no session to read them from. The offsets are
+     * kept until the text is replaced, so reading a large document a chunk at a time only splits it once.
+     */
+    private void indexTextLines() {
+        final String currentText = text == null ? "" : text;
+        // The same String object holds the same text, so it is not compared character by character
+        if (indexedText == currentText && textLineStarts != null) {
+            return;
+        }
+
+        final int length = currentText.length();
+        int lineCount = 1;
+        for (int i = 0; i < length; ++i) {
+            final char c = currentText.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == length || currentText.charAt(i + 1) != '\n'))) {
+                ++lineCount;
+            }
+        }
+
+        final int[] starts = new int[lineCount];
+        final int[] ends = new int[lineCount];
+        int row = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = currentText.charAt(i);
+            if (c == '\n' || c == '\r') {
+                ends[row] = i;
+                if (c == '\r' && i + 1 < length && currentText.charAt(i + 1) == '\n') {
+                    ++i;
+                }
+                starts[++row] = i + 1;
+            }
+        }
+        ends[row] = length;
+
+        indexedText = currentText;
+        textLineStarts = starts;
+        textLineEnds = ends;
+    }
+
+    private static native String getLinesNative(final JavaScriptObject session, final int rowStart, final int rowEnd) /*-{
+        var document = session.getDocument();
+        return document.getLines(rowStart, rowEnd).join(document.getNewLineCharacter());
+    }-*/;
+
+    private static native String getLineNative(final JavaScriptObject session, final int row) /*-{
+        return session.getLine(row);
+    }-*/;
+
+    private static native int getLineCountNative(final JavaScriptObject session) /*-{
+        return session.getLength();
+    }-*/;
+
+    private static native String getNewLineCharacterNative(final JavaScriptObject session) /*-{
+        return session.getDocument().getNewLineCharacter();
+    }-*/;
+
     public void setText(final String text) {
         this.text = text;
+        if (!isEditorCreated() && documentKey != null) {
+            // The cached session no longer holds the current text of the document
+            uncacheSessionNative(documentKey);
+        }
         setTextNative(text);
+        textReplaced();
+        markCleanNative(text);
+        renderPlaceholderNative();
     };
 
+    /**
+     * Set the complete text in the editor, optionally changing only the parts of it that differ from the current text.
+     *
+     * When keepState is true, the rows of the two texts are compared, and only the rows that were added, removed or
+     * changed are edited, replacing just the changed characters of rows that were changed. The undo history, folds,
+     * scroll position and the markers of the unchanged rows are kept, and the analysis workers only look at the
+     * changed rows again. This suits a document that is reloaded with text close to what is displayed, like the text
+     * returned by the server after a save. The change can be undone like any other edit.
+     *
+     * @param text the text to set in the editor
+     * @param keepState true to edit only the differences, false to replace the document as {@link #setText(String)}
+     *                  does
+     */
+    public void setText(final String text, final boolean keepState) {
+        final JavaScriptObject session = keepState && text != null ? getTextSessionNative() : null;
+        if (session == null) {
+            setText(text);
+            return;
+        }
+
+        this.text = text;
+        applyTextDifferencesNative(session, text);
+        if (!isEditorCreated()) {
+            // The cached session is not being watched for changes
+            textReplaced();
+        }
+        markCleanNative(text);
+        renderPlaceholderNative();
+    }
+
+    /**
+     * Edit the rows of a session that differ from a text.
+     */
+    private native void applyTextDifferencesNative(final JavaScriptObject session, final String text) /*-{
+        var span = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("setTextDifferences", this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId);
+        var Range = $wnd.ace.require("ace/range").Range;
+        var oldLines = session.getDocument().getAllLines();
+        var newLines = text.split(/\r\n|\r|\n/);
+        var hunks = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::diffRows(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;I)(oldLines, newLines, @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::MAX_DIFF_EDITS);
+
+        // Work up from the last hunk, so the rows of the hunks above are not moved
+        for (var i = hunks.length - 1; i >= 0; --i) {
+            var hunk = hunks[i];
+            var oldCount = hunk.oldEnd - hunk.oldStart;
+            var newCount = hunk.newEnd - hunk.newStart;
+
+            if (oldCount == newCount && !hunk.block) {
+                // Replace only the characters that changed in each row
+                for (var j = 0; j < oldCount; ++j) {
+                    var oldLine = oldLines[hunk.oldStart + j];
+                    var newLine = newLines[hunk.newStart + j];
+                    var prefix = 0;
+                    var maxPrefix = Math.min(oldLine.length, newLine.length);
+                    while (prefix < maxPrefix && oldLine.charAt(prefix) == newLine.charAt(prefix)) {
+                        ++prefix;
+                    }
+                    var suffix = 0;
+                    var maxSuffix = maxPrefix - prefix;
+                    while (suffix < maxSuffix && oldLine.charAt(oldLine.length - 1 - suffix) == newLine.charAt(newLine.length - 1 - suffix)) {
+                        ++suffix;
+                    }
+                    session.replace(new Range(hunk.oldStart + j, prefix, hunk.oldStart + j, oldLine.length - suffix),
+                        newLine.substring(prefix, newLine.length - suffix));
+                }
+            } else if (newCount == 0) {
+                // Remove the rows, with the new line character before or after them
+                if (hunk.oldEnd < oldLines.length) {
+                    session.remove(new Range(hunk.oldStart, 0, hunk.oldEnd, 0));
+                } else {
+                    session.remove(new Range(hunk.oldStart - 1, oldLines[hunk.oldStart - 1].length, hunk.oldEnd - 1, oldLines[hunk.oldEnd - 1].length));
+                }
+            } else if (oldCount == 0) {
+                // Insert the rows, with a new line character after or before them
+                var inserted = newLines.slice(hunk.newStart, hunk.newEnd).join("\n");
+                if (hunk.oldStart < oldLines.length) {
+                    session.insert({row: hunk.oldStart, column: 0}, inserted + "\n");
+                } else {
+                    session.insert({row: hunk.oldStart - 1, column: oldLines[hunk.oldStart - 1].length}, "\n" + inserted);
+                }
+            } else {
+                session.replace(new Range(hunk.oldStart, 0, hunk.oldEnd - 1, oldLines[hunk.oldEnd - 1].length),
+                    newLines.slice(hunk.newStart, hunk.newEnd).join("\n"));
+            }
+        }
+
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(span, session.getLength());
+    }-*/;
+
+    /**
+     * Find the rows that differ between two lists of rows. The rows are compared by an id given to each distinct row,
+     * and the shortest list of edits is found with Myers' diff algorithm, after the rows both lists start and end with
+     * are removed.
+     *
+     * @param oldLines The rows of the current text
+     * @param newLines The rows of the new text
+     * @param maxEdits The number of rows that can be added or removed before the rows between the first and last
+     *                 difference are replaced as one hunk, so very different texts don't take long to compare
+     * @return An array of {oldStart, oldEnd, newStart, newEnd} hunks (the ends are exclusive), in order. A hunk
+     *         that was not compared row by row has block set.
+     */
+    private static native JavaScriptObject diffRows(final JavaScriptObject oldLines, final JavaScriptObject newLines,
+            final int maxEdits) /*-{
+        var start = 0;
+        var oldEnd = oldLines.length;
+        var newEnd = newLines.length;
+        while (start < oldEnd && start < newEnd && oldLines[start] === newLines[start]) {
+            ++start;
+        }
+        while (oldEnd > start && newEnd > start && oldLines[oldEnd - 1] === newLines[newEnd - 1]) {
+            --oldEnd;
+            --newEnd;
+        }
+
+        if (start == oldEnd && start == newEnd) {
+            return [];
+        }
+        if (start == oldEnd || start == newEnd) {
+            return [{oldStart: start, oldEnd: oldEnd, newStart: start, newEnd: newEnd}];
+        }
+
+        // Give each distinct row an id, so rows are compared as numbers
+        var ids = Object.create(null);
+        var nextId = 0;
+        var toIds = function(lines, from, to) {
+            var retValue = [];
+            for (var i = from; i < to; ++i) {
+                var id = ids[lines[i]];
+                if (id === undefined) {
+                    id = ids[lines[i]] = nextId++;
+                }
+                retValue.push(id);
+            }
+            return retValue;
+        };
+        var a = toIds(oldLines, start, oldEnd);
+        var b = toIds(newLines, start, newEnd);
+        var n = a.length;
+        var m = b.length;
+
+        // v[k + offset] is the furthest row of a reached on diagonal k. trace[d] holds v for the diagonals -d to d
+        // before step d, so the path can be followed back.
+        var max = Math.min(n + m, maxEdits);
+        var offset = max + 1;
+        var v = new Array(2 * max + 3);
+        v[offset + 1] = 0;
+        var trace = [];
+        var edits = -1;
+        search:
+        for (var d = 0; d <= max; ++d) {
+            trace.push(v.slice(offset - d, offset + d + 1));
+            for (var k = -d; k <= d; k += 2) {
+                var x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]) ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                var y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    ++x;
+                    ++y;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    edits = d;
+                    break search;
+                }
+            }
+        }
+
+        if (edits == -1) {
+            return [{oldStart: start, oldEnd: oldEnd, newStart: start, newEnd: newEnd, block: true}];
+        }
+
+        // Follow the path back, collecting the [x, y] rows that match, from the last to the first
+        var matches = [];
+        var x = n;
+        var y = m;
+        for (var d = edits; d > 0; --d) {
+            var previous = trace[d];
+            var k = x - y;
+            var previousK = k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d]) ? k + 1 : k - 1;
+            var previousX = previous[previousK + d];
+            var previousY = previousX - previousK;
+            var snakeX = previousK == k + 1 ? previousX : previousX + 1;
+            while (x > snakeX) {
+                --x;
+                --y;
+                matches.push([x, y]);
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0) {
+            --x;
+            --y;
+            matches.push([x, y]);
+        }
+        matches.push([-1, -1]);
+        matches.reverse();
+        matches.push([n, m]);
+
+        // The hunks are the rows between the matching rows
+        var hunks = [];
+        for (var i = 1, matchesLength = matches.length; i < matchesLength; ++i) {
+            var previousMatch = matches[i - 1];
+            var match = matches[i];
+            if (match[0] > previousMatch[0] + 1 || match[1] > previousMatch[1] + 1) {
+                hunks.push({
+                    oldStart: start + previousMatch[0] + 1,
+                    oldEnd: start + match[0],
+                    newStart: start + previousMatch[1] + 1,
+                    newEnd: start + match[1]
+                });
+            }
+        }
+        return hunks;
+    }-*/;
+
     /**
      * Set the complete text in the editor from a String.
      * 
@@ -840,7 +1831,9 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     private native void setTextNative(final String text) /*-{
 		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
 		if (editor != null) {
+			var span = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("setText", this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId);
 			editor.getSession().setValue(text);
+			@edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(span, editor.getSession().getLength());
 		} else {
 			console.log("editor == null. setTextNative() was not called successfully.");
 		}
@@ -1067,7 +2060,11 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     public void setAutoCompleteEnabled(final boolean enableAutoComplete) {
         if (this.enableAutoComplete != enableAutoComplete) {
             this.enableAutoComplete = enableAutoComplete;
-            setAutoCompleteEnabledNative(enableAutoComplete);
+            if (isEditorCreated()) {
+                // The auto complete code is loaded the first time it is enabled
+                startedFeatures.remove(AceEditorFeature.AUTO_COMPLETE);
+                startFeature(AceEditorFeature.AUTO_COMPLETE);
+            }
         }
     }
 
@@ -1294,7 +2291,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                         }(this.wordData),
                         success: function(wordData) {
                             return function(topicData) {
-                                console.log("Found topic with ID " + wordData.value);
+                                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Found topic with ID " + wordData.value);
 
                                 // Add an option to open the topic in a new window
                                 var editOption = {};
@@ -1373,7 +2370,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                         },
                         success: function(csNodeData) {
 
-                            console.log("Found CSNodes");
+                            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Found CSNodes");
 
                             csNodeData.items.sort(function(a,b){
                                 return a.item.contentSpec.id - b.item.contentSpec.id;
@@ -1467,6 +2464,20 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                                         }
                                     }
 
+                                    // Misspelled words can be added to the custom dictionary. Bad words are always reported.
+                                    if (cmenu.wordData.misspelled) {
+                                        var misspelledWord = editor.getSession().getLine(cmenu.wordData.line).substring(cmenu.wordData.start, cmenu.wordData.end);
+                                        var addOption = {};
+                                        addOption["Add to Dictionary"] = function(menuItem, menu) {
+                                            me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::addToDictionary(Ljava/lang/String;)(misspelledWord);
+
+                                            // Re-focus the editor, as the context menu takes the focus
+                                            editor.focus();
+                                        };
+                                        retValue.push($wnd.jQuery.contextMenu.separator);
+                                        retValue.push(addOption);
+                                    }
+
                                     cmenu.callbackWrapper(retValue);
                                 }
                             });
@@ -1476,7 +2487,8 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                             spellingWorker = me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
                         }
 
-                        spellingWorker.postMessage({action: "suggest", word: word, limit: 5});
+                        // The row and column let the worker pick the dictionary of the language at the word
+                        spellingWorker.postMessage({action: "suggest", word: word, limit: 5, row: this.wordData.line, column: this.wordData.start});
                     } else if (this.wordData.type == 'tag' || this.wordData.type == 'spec') {
                         if (xmlElementDB != null) {
                             var database = xmlElementDB.@edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB::getDatabase()();
@@ -1560,6 +2572,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                                     cmenu.wordData['type'] = 'spec';
                                 } else  {
                                     cmenu.wordData['type'] = 'spelling';
+                                    cmenu.wordData['misspelled'] = matches[1] == 'misspelled';
                                 }
 
                                 cmenu.wordData['line'] = parseInt(matches[2]);
@@ -1608,9 +2621,13 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     private native void enableConditionalMatchingNative() /*-{
 
         try {
-            console.log("ENTER AceEditor.enableConditionalMatchingNative()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.enableConditionalMatchingNative()");
 
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+
+            var metrics = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::metrics;
+
+            var editorId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
             var checkConditionsInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval;
 
             if (editor == null) {
@@ -1618,51 +2635,149 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 return;
             }
 
-            var markersPresent  = [];
-            var contentsModified = true;
             var currentlyCheckingConditions = false;
-            var lastCondition = null;
+            var checkedSession = null;
+            var checkedCondition = null;
+            var checkedRevision = null;
+            var checkedInBackground = false;
+            var analysisState = function(session) {
+                return @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "conditional");
+            };
 
-            // Check for changes to the text
-            editor.getSession().on('change', function(e) {
-                contentsModified = true;
-            });
+            // The exclusions found for the current revision of a session are cached for the most recently used
+            // conditions, so switching back to a condition doesn't need the worker
+            var cachedExclusions = function(state, condition) {
+                var key = condition == null ? "" : condition;
+                if (state.conditionCache == null || state.conditionCache.exclusions[key] == null) {
+                    return null;
+                }
+
+                var order = state.conditionCache.order;
+                order.splice(order.indexOf(key), 1);
+                order.push(key);
+                return state.conditionCache.exclusions[key];
+            };
+
+            var cacheExclusions = function(state, condition, exclusions) {
+                var key = condition == null ? "" : condition;
+                if (state.conditionCache == null) {
+                    state.conditionCache = {exclusions: {}, order: []};
+                }
+
+                var order = state.conditionCache.order;
+                if (state.conditionCache.exclusions[key] != null) {
+                    order.splice(order.indexOf(key), 1);
+                }
+                state.conditionCache.exclusions[key] = exclusions;
+                order.push(key);
+
+                while (order.length > @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::CONDITION_CACHE_SIZE) {
+                    delete state.conditionCache.exclusions[order.shift()];
+                }
+            };
+
+            var Range = $wnd.ace.require('ace/range').Range;
+
+            // Keep the markers for the exclusions that have not changed, and replace the rest. An exclusion spanning
+            // several rows is a single marker.
+            var showExclusions = function(session, state, exclusions) {
+                var oldMarkerKeys = state.markerKeys || {};
+                var markerKeys = {};
+                state.markers = [];
+
+                for (var exclusionIndex = 0, exclusionsLength = exclusions.length; exclusionIndex < exclusionsLength; ++exclusionIndex) {
+                    var exclusion = exclusions[exclusionIndex];
+                    var key = exclusion.join(":");
+                    if (markerKeys[key] != null) {
+                        continue;
+                    }
+
+                    if (oldMarkerKeys[key] != null) {
+                        markerKeys[key] = oldMarkerKeys[key];
+                        delete oldMarkerKeys[key];
+                    } else {
+                        markerKeys[key] = session.addMarker(
+                            new Range(exclusion[0], exclusion[1], exclusion[2], exclusion[3]),
+                            "conditionExclusion",
+                            "conditional",
+                            true);
+                    }
+                    state.markers.push(markerKeys[key]);
+                }
+
+                for (var key in oldMarkerKeys) {
+                    session.removeMarker(oldMarkerKeys[key]);
+                }
+                state.markerKeys = markerKeys;
+            };
 
             // Setup a worker to perform the spell checking, and handle the results
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker = new Worker("javascript/highlighters/conditional.js");
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createAnalysisWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature::CONDITIONAL_CHECKING);
             var conditionalMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker;
+            if (conditionalMatchingWorker == null) {
+                return;
+            }
+            var fused = conditionalMatchingWorker.aceGwtFused === true;
+
+            // Check for changes to the text. The fused analysis worker keeps track of the changed rows itself.
+            editor.on('change', function(e) {
+                var state = analysisState(editor.getSession());
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisModified(Lcom/google/gwt/core/client/JavaScriptObject;)(state);
+
+                // The cached exclusions belong to the previous revision
+                state.revision = (state.revision || 0) + 1;
+                state.conditionCache = null;
+
+                if (!fused) {
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::trackChangedRows(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(state, e.data);
+                }
+            });
+
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::listenToWorker(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(conditionalMatchingWorker, function(e) {
+                // The fused analysis worker also posts the messages of the other passes
+                if (!$wnd.Array.isArray(e.data) && e.data.action != "conditions") {
+                    return;
+                }
 
-            conditionalMatchingWorker.addEventListener('message', function(e) {
                 try {
                     if (editor == null) {
                         return;
                     }
 
-                    var lineData = e.data;
-
-                    var session = editor.getSession();
-
-                    // Clear the markers.
-                    for (var i in markersPresent) {
-                        session.removeMarker(markersPresent[i]);
+                    // Workers that reply with an array of single row exclusions don't keep a model of the document,
+                    // so they are always sent the whole document
+                    var exclusions;
+                    if (e.data.action == "conditions") {
+                        exclusions = e.data.exclusions;
+                    } else {
+                        conditionalMatchingWorker.aceGwtIncremental = false;
+                        exclusions = [];
+                        for (var lineDataIndex = 0, lineDataLength = e.data.length; lineDataIndex < lineDataLength; ++lineDataIndex) {
+                            var conditionalExclusion = e.data[lineDataIndex];
+                            exclusions.push([conditionalExclusion.line, conditionalExclusion.start, conditionalExclusion.line, conditionalExclusion.end]);
+                        }
                     }
-                    markersPresent =  [];
 
-                    var Range = $wnd.ace.require('ace/range').Range;
-
-                    for (var lineDataIndex = 0, lineDataLength = lineData.length; lineDataIndex < lineDataLength; ++lineDataIndex) {
+                    // The results belong to the session that was checked, which may no longer be displayed
+                    var session = checkedSession;
+                    var state = analysisState(session);
 
-                        var conditionalExclusion = lineData[lineDataIndex];
+                    // Results for an older revision of the session can be displayed until the next check, but not
+                    // reused
+                    if (state.revision === checkedRevision) {
+                        cacheExclusions(state, checkedCondition, exclusions);
+                    }
 
-                        var range = new Range(conditionalExclusion.line, conditionalExclusion.start, conditionalExclusion.line, conditionalExclusion.end);
-                        markersPresent[markersPresent.length] = session.addMarker(
-                            range,
-                            "conditionExclusion",
-                            "conditional",
-                            true);
+                    // Results found in the background are only cached, as are the results of a condition that was
+                    // replaced while it was checked, such as by a condition displayed from the cache
+                    if (checkedInBackground || state.condition !== checkedCondition) {
+                        return;
+                    }
 
+                    var receivedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisReceived(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::CONDITIONAL, state);
+                    showExclusions(session, state, exclusions);
 
-                    }
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisApplied(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;D)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::CONDITIONAL, state, receivedAt);
                 } finally {
                     currentlyCheckingConditions = false;
                 }
@@ -1670,28 +2785,114 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
             var checkConditions = function(me) {
                 return function() {
+                    var condition = me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::condition;
+                    var session = editor.getSession();
+                    var state = analysisState(session);
+
+                    // Display a condition the session was already checked against straight from the cache, even while
+                    // the worker is busy with another condition
+                    if (!state.modified && state.condition != condition) {
+                        var cached = cachedExclusions(state, condition);
+                        if (cached != null) {
+                            state.condition = condition;
+                            showExclusions(session, state, cached);
+                            metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::increment(Ljava/lang/String;)(
+                                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::CONDITION_CACHE_HITS);
+                            metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::setGauge(Ljava/lang/String;D)(
+                                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::name(Ljava/lang/String;Ljava/lang/String;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::MARKERS_ALIVE, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::CONDITIONAL),
+                                state.markers.length);
+                            return;
+                        }
+                    }
+
                     if (currentlyCheckingConditions) {
                         return;
                     }
 
-                    var condition = me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::condition;
-
-                    if (!contentsModified && (lastCondition == condition)) {
+                    if (!state.modified && (state.condition == condition)) {
+                        // Find the exclusions of the profiles the user may switch to while the worker is idle. This
+                        // needs a worker that holds the current revision of the session.
+                        var current = fused ?
+                            @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::isAnalysisDocumentCurrent(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(conditionalMatchingWorker, session) :
+                            conditionalMatchingWorker.aceGwtIncremental !== false &&
+                                conditionalMatchingWorker.aceGwtModelledState === state &&
+                                state.dirtyStart == null;
+                        if (current) {
+
+                            var profiles = me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getConditionProfilesArray()();
+                            for (var profileIndex = 0, profilesLength = profiles.length; profileIndex < profilesLength; ++profileIndex) {
+                                if (cachedExclusions(state, profiles[profileIndex]) == null) {
+                                    currentlyCheckingConditions = true;
+                                    checkedSession = session;
+                                    checkedCondition = profiles[profileIndex];
+                                    checkedRevision = state.revision;
+                                    checkedInBackground = true;
+                                    conditionalMatchingWorker.postMessage({action: "evaluate", condition: profiles[profileIndex]});
+                                    return;
+                                }
+                            }
+                        }
                         return;
                     }
 
-                    console.log("Checking Conditions");
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Checking Conditions");
 
-                    lastCondition = condition;
+                    state.condition = condition;
                     currentlyCheckingConditions = true;
-                    contentsModified = false;
+                    state.modified = false;
+                    checkedSession = session;
+                    checkedCondition = condition;
+                    checkedRevision = state.revision;
+                    checkedInBackground = false;
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisRequested(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::CONDITIONAL, state);
+
+                    if (fused) {
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::queueAnalysis(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(
+                            conditionalMatchingWorker, session, {action: "conditions", condition: condition});
+                        return;
+                    }
 
-                    conditionalMatchingWorker.postMessage(
-                        {
-                            text: editor.getSession().getValue(),
-                            condition: condition
+                    // Send only the changed rows if the worker holds the previous version of this session's text, and
+                    // the changes don't cover most of the document
+                    var dirtyRows = state.dirtyStart == null ? 0 : state.dirtyEnd - state.dirtyStart + 1;
+                    if (conditionalMatchingWorker.aceGwtIncremental !== false &&
+                        conditionalMatchingWorker.aceGwtModelledState === state &&
+                        dirtyRows * 2 < session.getLength()) {
+
+                        if (state.dirtyStart == null) {
+                            // Only the condition has changed
+                            conditionalMatchingWorker.postMessage(
+                                {
+                                    action: "update",
+                                    start: 0,
+                                    oldEnd: -1,
+                                    lines: [],
+                                    condition: condition
+                                }
+                            );
+                        } else {
+                            conditionalMatchingWorker.postMessage(
+                                {
+                                    action: "update",
+                                    start: state.dirtyStart,
+                                    oldEnd: state.dirtyEnd - state.dirtyDelta,
+                                    lines: session.getLines(state.dirtyStart, state.dirtyEnd),
+                                    condition: condition
+                                }
+                            );
                         }
-                    );
+                    } else {
+                        conditionalMatchingWorker.postMessage(
+                            {
+                                text: session.getValue(),
+                                condition: condition,
+                                incremental: true
+                            }
+                        );
+                    }
+
+                    conditionalMatchingWorker.aceGwtModelledState = state;
+                    state.dirtyStart = null;
                 }
             }
 
@@ -1701,11 +2902,18 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval = null;
             }
 
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval = $wnd.setInterval(checkConditions(this), 500);
+            if (fused) {
+                conditionalMatchingWorker.aceGwtPasses.push(checkConditions(this));
+            } else {
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::checkConditionsInterval = $wnd.setInterval(checkConditions(this), 500);
+            }
             checkConditions(this)();
 
+            // setCondition() checks straight away, so a cached condition is displayed immediately
+            conditionalMatchingWorker.aceGwtCheckConditions = checkConditions(this);
+
         } finally {
-            console.log("EXIT AceEditor.enableConditionalMatchingNative()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.enableConditionalMatchingNative()");
         }
 
     }-*/;
@@ -1718,9 +2926,13 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     private native void enableSpellCheckingEnabledNative() /*-{
 
         try {
-            console.log("ENTER AceEditor.enableSpellCheckingEnabledNative()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.enableSpellCheckingEnabledNative()");
 
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+
+            var metrics = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::metrics;
+
+            var editorId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
             var spellcheckInterval = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellcheckInterval;
 
             if (editor == null) {
@@ -1734,81 +2946,134 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 return;
             }
 
-            var markersPresent  = [];
-            var contentsModified = true;
+            var me = this;
             var currentlySpellchecking = false;
             var initialised = false;
+            var checkedSession = null;
+            var analysisState = function(session) {
+                return @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "spelling");
+            };
 
             // Check for changes to the text
-            editor.getSession().on('change', function(e) {
-                contentsModified = true;
+            editor.on('change', function(e) {
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisModified(Lcom/google/gwt/core/client/JavaScriptObject;)(analysisState(editor.getSession()));
             });
 
+            var Range = $wnd.ace.require('ace/range').Range;
+
+            // The marker classes of the kinds of result the worker reports (RESULT_MISSPELLED, RESULT_BAD_WORD and
+            // RESULT_BAD_PHRASE in checkspelling.js)
+            var resultClasses = ["misspelled-", "badword-", "badphrase-"];
+
+            // Add the markers for the packed [row, start, end, kind] results the worker found
+            var addMarkers = function(session, state, results) {
+                for (var i = 0, resultsLength = results.length; i < resultsLength; i += 4) {
+                    var row = results[i];
+                    var start = results[i + 1];
+                    var end = results[i + 2];
+
+                    // Add the information required to identify the misspelled word to the class itself. This
+                    // gives us a way to go back from a click event to a word.
+                    state.markers[state.markers.length] = session.addMarker(
+                        new Range(row, start, row, end),
+                        resultClasses[results[i + 3]] + row + "-" + start + "-" + end,
+                        "typo",
+                        true);
+                }
+            };
+
+            // Workers supplied by the host application may still reply with the results of each line as objects
+            var resultsOf = function(data, rows) {
+                if (data.results != null) {
+                    return data.results;
+                }
+
+                var results = [];
+                for (var lineIndex = 0, linesLength = data.lineData.length; lineIndex < linesLength; ++lineIndex) {
+                    var row = rows == null ? lineIndex : rows[lineIndex];
+                    var lineResults = [data.lineData[lineIndex].misspelled, data.lineData[lineIndex].badWords, data.lineData[lineIndex].badPhrases];
+                    for (var kind = 0; kind < lineResults.length; ++kind) {
+                        for (var j = 0, rangesLength = lineResults[kind].length; j < rangesLength; ++j) {
+                            results.push(row, lineResults[kind][j][0], lineResults[kind][j][1], kind);
+                        }
+                    }
+                }
+                return results;
+            };
+
             var spellingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
-            spellingWorker.addEventListener('message', function(e){
+            var fused = spellingWorker.aceGwtFused === true;
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::listenToWorker(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(spellingWorker, function(e){
                 if (e.data.action == "init") {
                     initialised = true;
+                    metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::record(Ljava/lang/String;D)(
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::DICTIONARY_LOAD,
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()() - spellingWorker.aceGwtInitStartedAt);
                 } else if (e.data.action == "spellcheck") {
                     if (editor == null) {
                         return;
                     }
 
                     try {
-                        var lineData = e.data.lineData;
+                        var results = resultsOf(e.data, null);
 
-                        var session = editor.getSession();
+                        // The results belong to the session that was checked, which may no longer be displayed
+                        var session = checkedSession;
+                        var state = analysisState(session);
+                        var receivedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisReceived(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPELLING, state);
 
                         // Clear the markers.
-                        for (var i in markersPresent) {
-                            session.removeMarker(markersPresent[i]);
+                        for (var i in state.markers) {
+                            session.removeMarker(state.markers[i]);
                         }
-                        markersPresent =  [];
-
-                        var Range = $wnd.ace.require('ace/range').Range;
-
-                        for (var lineDataIndex = 0, lineDataLength = lineData.length; lineDataIndex < lineDataLength; ++lineDataIndex) {
-                            var misspellings = lineData[lineDataIndex];
-
-                            for (var j in misspellings.misspelled) {
-                                var range = new Range(lineDataIndex, misspellings.misspelled[j][0], lineDataIndex, misspellings.misspelled[j][1]);
+                        state.markers =  [];
 
-                                // Add the information required to identify the misspelled word to the class itself. This
-                                // gives us a way to go back from a click event to a word.
-                                markersPresent[markersPresent.length] = session.addMarker(
-                                    range,
-                                    "misspelled-" + lineDataIndex + "-" + misspellings.misspelled[j][0] + "-" + misspellings.misspelled[j][1],
-                                    "typo",
-                                    true);
-                            }
+                        addMarkers(session, state, results);
 
-                            for (var j in misspellings.badWords) {
-                                var range = new Range(lineDataIndex, misspellings.badWords[j][0], lineDataIndex, misspellings.badWords[j][1]);
-                                markersPresent[markersPresent.length] = session.addMarker(
-                                    range,
-                                    "badword-" + lineDataIndex + "-" + misspellings.badWords[j][0] + "-" + misspellings.badWords[j][1],
-                                    "typo",
-                                    true);
-                            }
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisApplied(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;D)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPELLING, state, receivedAt);
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::wordMemoReported(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, e.data.memo);
+                    } finally {
+                        currentlySpellchecking = false;
+                    }
+                } else if (e.data.action == "recheck") {
+                    // The rows containing a word that was added to or removed from the custom dictionary were checked
+                    // again. Replace the markers of just those rows.
+                    var session = spellingWorker.aceGwtRechecks.shift();
+                    if (editor == null || session == null) {
+                        return;
+                    }
 
-                            for (var j in misspellings.badPhrases) {
-                                var range = new Range(lineDataIndex, misspellings.badPhrases[j][0], lineDataIndex, misspellings.badPhrases[j][1]);
-                                markersPresent[markersPresent.length] = session.addMarker(
-                                    range,
-                                    "badphrase-" + lineDataIndex + "-" + misspellings.badPhrases[j][0] + "-" + misspellings.badPhrases[j][1],
-                                    "typo",
-                                    true);
-                            }
+                    var state = analysisState(session);
+                    var rows = e.data.rows;
+                    var rechecked = {};
+                    for (var i = 0, rowsLength = rows.length; i < rowsLength; ++i) {
+                        rechecked[rows[i]] = true;
+                    }
 
+                    var sessionMarkers = session.getMarkers(true);
+                    var keptMarkers = [];
+                    for (var i = 0, markersLength = state.markers.length; i < markersLength; ++i) {
+                        var marker = sessionMarkers[state.markers[i]];
+                        if (marker != null && rechecked[marker.range.start.row]) {
+                            session.removeMarker(state.markers[i]);
+                        } else {
+                            keptMarkers.push(state.markers[i]);
                         }
-                    } finally {
-                        currentlySpellchecking = false;
                     }
+                    state.markers = keptMarkers;
+
+                    addMarkers(session, state, resultsOf(e.data, rows));
+
+                    metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::setGauge(Ljava/lang/String;D)(
+                        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::name(Ljava/lang/String;Ljava/lang/String;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::MARKERS_ALIVE, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPELLING),
+                        state.markers.length);
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::wordMemoReported(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, e.data.memo);
                 }
             });
 
             var spellCheck = function() {
                 if (!initialised) {
-                    console.log("Waiting for dictionary to load.");
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Waiting for dictionary to load.");
                     return;
                 }
 
@@ -1816,16 +3081,32 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                     return;
                 }
 
-                if (!contentsModified) {
+                var session = editor.getSession();
+                var state = analysisState(session);
+
+                var lang = me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getSpellCheckingLanguage()();
+
+                // A session that was not displayed when the custom dictionary or the language changed is checked again in full
+                if (!state.modified && state.dictionaryVersion == spellingWorker.aceGwtDictionaryVersion && state.lang == lang) {
                     return;
                 }
 
-                console.log("Checking Spelling");
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Checking Spelling");
 
                 currentlySpellchecking = true;
-                contentsModified = false;
-
-                spellingWorker.postMessage({action: "spellcheck", lines: editor.getSession().getDocument().getAllLines()});
+                state.modified = false;
+                state.dictionaryVersion = spellingWorker.aceGwtDictionaryVersion;
+                state.lang = lang;
+                checkedSession = session;
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisRequested(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPELLING, state);
+
+                if (fused) {
+                    // The fused analysis worker already holds the text
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::queueAnalysis(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(
+                        spellingWorker, session, {action: "spellcheck", lang: lang});
+                } else {
+                    spellingWorker.postMessage({action: "spellcheck", lines: session.getDocument().getAllLines(), lang: lang});
+                }
             }
 
             // Enable spell checking on regular intervals
@@ -1834,11 +3115,15 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellcheckInterval = null;
             }
 
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellcheckInterval = $wnd.setInterval(spellCheck, 500);
+            if (fused) {
+                spellingWorker.aceGwtPasses.push(spellCheck);
+            } else {
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellcheckInterval = $wnd.setInterval(spellCheck, 500);
+            }
             spellCheck();
 
         } finally {
-            console.log("EXIT AceEditor.enableSpellCheckingEnabledNative()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.enableSpellCheckingEnabledNative()");
         }
 
     }-*/;
@@ -1847,18 +3132,37 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         // Setup a worker to perform the spell checking, and handle the results
         if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker == null) {
             var baseTyposJsUrl = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::baseTypoJsUrl;
-            var typoJsLang = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::typoJsLang;
+            var typoJsLang = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getSpellCheckingLanguage()();
 
             if (baseTyposJsUrl == null) {
                 console.log("baseTyposJsUrl == null. Spell checking will not be enabled.");
                 return false;
             }
 
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker = new Worker("javascript/typojs/checkspelling.js");
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createAnalysisWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature::SPELL_CHECKING);
             var spellingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
+            if (spellingWorker == null) {
+                return false;
+            }
 
-            // init the dictionaries.
-            spellingWorker.postMessage({action: "init", baseTypoJsUrl: baseTyposJsUrl, lang: typoJsLang || "en_US"});
+            spellingWorker.aceGwtInitStartedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+            // The sessions waiting for the results of a recheck, in the order the rechecks were posted
+            spellingWorker.aceGwtRechecks = [];
+            // Incremented each time the custom dictionary changes
+            spellingWorker.aceGwtDictionaryVersion = 0;
+
+            // init the dictionaries. The worker may have been started from a Blob URL, so relative URLs can't be resolved by it.
+            // Dictionaries listed in the asset manifest are loaded from their content hashed files.
+            spellingWorker.postMessage({
+                action: "init",
+                baseTypoJsUrl: @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::toAbsoluteUrl(Ljava/lang/String;)(baseTyposJsUrl),
+                dictionaryUrls: @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::getDictionaryUrlsNative()(),
+                lang: typoJsLang,
+                dictionaryBudget: this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::dictionaryMemoryBudget,
+                customWords: this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getCustomWords()(),
+                skipElements: this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getSpellCheckingSkipElementsArray()()
+            });
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::watchCustomDictionary()();
         }
 
         return true;
@@ -1866,23 +3170,30 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
     private native void enableSpecMatching() /*-{
 		var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+		var metrics = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::metrics;
+		var editorId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
 		var xmlElementDB = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::xmlElementDB;
 
 		if (xmlElementDB != null) {
 			var currentlyMatchingSpecMetadata = false;
-			var specMetadataMarkersPresent = [];
-			var specMetadataContentsModified = true;
 			var loaded = false;
+			var checkedSession = null;
+			var analysisState = function(session) {
+				return @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "spec");
+			};
 
 			// Check for changes to the text
-			editor.getSession().on('change', function(e) {
-				specMetadataContentsModified = true;
+			editor.on('change', function(e) {
+				@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisModified(Lcom/google/gwt/core/client/JavaScriptObject;)(analysisState(editor.getSession()));
 			});
 
 			// Build the web worker to match tags
 
-			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::specMatchingWorker = new Worker("javascript/tagdb/contentSpecTagDB.js");
+			this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::specMatchingWorker = @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::createWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature::SPEC_MATCHING);
 			var specMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::specMatchingWorker;
+			if (specMatchingWorker == null) {
+				return;
+			}
 
 			specMatchingWorker.addEventListener('message', function(e){
 				try {
@@ -1892,13 +3203,16 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
 					var lineData = e.data;
 
-					var session = editor.getSession();
+					// The results belong to the session that was checked, which may no longer be displayed
+					var session = checkedSession;
+					var state = analysisState(session);
+					var receivedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisReceived(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPEC, state);
 
 					// Clear the markers.
-					for (var i in specMetadataMarkersPresent) {
-						session.removeMarker(specMetadataMarkersPresent[i]);
+					for (var i in state.markers) {
+						session.removeMarker(state.markers[i]);
 					}
-					specMetadataMarkersPresent = [];
+					state.markers = [];
 
 					var Range = $wnd.ace.require('ace/range').Range;
 
@@ -1907,7 +3221,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
 						for (var j in specMatches) {
 							var range = new Range(lineDataIndex, specMatches[j][0], lineDataIndex, specMatches[j][1]);
-							specMetadataMarkersPresent[specMetadataMarkersPresent.length] = session.addMarker(
+							state.markers[state.markers.length] = session.addMarker(
 								range,
 								"specmatch-" + lineDataIndex + "-" + specMatches[j][0] + "-" + specMatches[j][1],
 								"specmatch",
@@ -1915,6 +3229,8 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 						}
 
 					}
+
+					@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisApplied(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;D)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPEC, state, receivedAt);
 				} finally {
 					currentlyMatchingSpecMetadata = false;
 				}
@@ -1923,7 +3239,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
 			var matchSpecMetadata = function() {
 				if (!xmlElementDB.@edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB::isLoaded()()) {
-					console.log("Waiting for tag database to load.");
+					@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Waiting for tag database to load.");
 					return;
 				}
 
@@ -1931,7 +3247,10 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 					return;
 				}
 
-				if (!specMetadataContentsModified) {
+				var session = editor.getSession();
+				var state = analysisState(session);
+
+				if (!state.modified) {
 					return;
 				}
 
@@ -1941,12 +3260,14 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 					loaded = true;
 				}
 
-				console.log("Matching Spec Metadata");
+				@edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Matching Spec Metadata");
 
 				currentlyMatchingSpecMetadata = true;
-				specMetadataContentsModified = false;
+				state.modified = false;
+				checkedSession = session;
+				@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisRequested(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::SPEC, state);
 
-				specMatchingWorker.postMessage({lines: editor.getSession().getDocument().getAllLines()});
+				specMatchingWorker.postMessage({lines: session.getDocument().getAllLines()});
 			};
 
 			// Enable tag matching on regular intervals
@@ -1962,26 +3283,33 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
     private native void enableTagMatching() /*-{
         var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        var metrics = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::metrics;
+        var editorId = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::elementId;
         var xmlElementDB = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::xmlElementDB;
 
         if (xmlElementDB != null) {
             var currentlyMatchingTags = false;
-            var tagMarkersPresent = [];
-            var tagContentsModified = true;
             var loaded = false;
+            var checkedSession = null;
+            var analysisState = function(session) {
+                return @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "tags");
+            };
 
             // Check for changes to the text
-            editor.getSession().on('change', function(e) {
-                tagContentsModified = true;
+            editor.on('change', function(e) {
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisModified(Lcom/google/gwt/core/client/JavaScriptObject;)(analysisState(editor.getSession()));
             });
 
             // Build the web worker to match tags
-            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tagMatchingWorker = new Worker("javascript/tagdb/tagdb.js");
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tagMatchingWorker = @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::createWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature::TAG_MATCHING);
             var tagMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tagMatchingWorker;
+            if (tagMatchingWorker == null) {
+                return;
+            }
 
             tagMatchingWorker.addEventListener('message', function(e) {
                 try {
-                    console.log("tagMatchingWorker message received.");
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("tagMatchingWorker message received.");
 
                     if (editor == null) {
                         return;
@@ -1989,13 +3317,16 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
                     var lineData = e.data;
 
-                    var session = editor.getSession();
+                    // The results belong to the session that was checked, which may no longer be displayed
+                    var session = checkedSession;
+                    var state = analysisState(session);
+                    var receivedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisReceived(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::TAGS, state);
 
                     // Clear the markers.
-                    for (var i in tagMarkersPresent) {
-                        session.removeMarker(tagMarkersPresent[i]);
+                    for (var i in state.markers) {
+                        session.removeMarker(state.markers[i]);
                     }
-                    tagMarkersPresent = [];
+                    state.markers = [];
 
                     var Range = $wnd.ace.require('ace/range').Range;
 
@@ -2004,7 +3335,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
                         for (var j in tagMatches) {
                             var range = new Range(lineDataIndex, tagMatches[j][0], lineDataIndex, tagMatches[j][1]);
-                            tagMarkersPresent[tagMarkersPresent.length] = session.addMarker(
+                            state.markers[state.markers.length] = session.addMarker(
                                 range,
                                 "tagmatch-" + lineDataIndex + "-" + tagMatches[j][0] + "-" + tagMatches[j][1],
                                 "tagmatch",
@@ -2012,6 +3343,8 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                         }
 
                     }
+
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisApplied(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;D)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::TAGS, state, receivedAt);
                 } finally {
                     currentlyMatchingTags = false;
                 }
@@ -2020,7 +3353,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
             var matchTags = function() {
                 if (!xmlElementDB.@edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB::isLoaded()()) {
-                    console.log("Waiting for tag database to load.");
+                    @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Waiting for tag database to load.");
                     return;
                 }
 
@@ -2028,7 +3361,10 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                     return;
                 }
 
-                if (!tagContentsModified) {
+                var session = editor.getSession();
+                var state = analysisState(session);
+
+                if (!state.modified) {
                     return;
                 }
 
@@ -2038,12 +3374,14 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                     loaded = true;
                 }
 
-                console.log("Matching Tags");
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("Matching Tags");
 
                 currentlyMatchingTags = true;
-                tagContentsModified = false;
+                state.modified = false;
+                checkedSession = session;
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisRequested(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorMetrics;Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(metrics, editorId, @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::TAGS, state);
 
-                tagMatchingWorker.postMessage({lines: editor.getSession().getDocument().getAllLines()});
+                tagMatchingWorker.postMessage({lines: session.getDocument().getAllLines()});
             };
 
             // Enable tag matching on regular intervals
@@ -2057,6 +3395,525 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
         }
     }-*/;
 
+    /**
+     * Record that a session was edited. The time of the first edit since the last analysis is kept, to measure how long
+     * the edit takes to be reflected in the markers.
+     */
+    private static native void analysisModified(final JavaScriptObject state) /*-{
+        state.modified = true;
+        if (state.changedAt == null) {
+            state.changedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+        }
+    }-*/;
+
+    private static native void analysisRequested(final AceEditorMetrics metrics, final String editorId, final String pass,
+            final JavaScriptObject state) /*-{
+        state.requestedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+        state.requestSpan = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("worker." + pass, editorId);
+        state.requestChangedAt = state.changedAt;
+        state.changedAt = null;
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::increment(Ljava/lang/String;)(
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::name(Ljava/lang/String;Ljava/lang/String;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::WORKER_REQUESTS, pass));
+    }-*/;
+
+    /**
+     * @return The time the results of an analysis were received
+     */
+    private static native double analysisReceived(final AceEditorMetrics metrics, final String editorId, final String pass,
+            final JavaScriptObject state) /*-{
+        var receivedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+        var lines = state.session != null ? state.session.getLength() : 0;
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(state.requestSpan, lines);
+        state.requestSpan = null;
+        state.applySpan = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::begin(Ljava/lang/String;Ljava/lang/String;)("markers." + pass, editorId);
+        if (state.requestedAt != null) {
+            metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::record(Ljava/lang/String;D)(
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::name(Ljava/lang/String;Ljava/lang/String;)(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::WORKER_ROUND_TRIP, pass),
+                receivedAt - state.requestedAt);
+        }
+        return receivedAt;
+    }-*/;
+
+    private static native void analysisApplied(final AceEditorMetrics metrics, final String editorId, final String pass,
+            final JavaScriptObject state, final double receivedAt) /*-{
+        var appliedAt = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::end(Lcom/google/gwt/core/client/JavaScriptObject;I)(state.applySpan, state.session != null ? state.session.getLength() : 0);
+        state.applySpan = null;
+        var name = function(metric) {
+            return @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::name(Ljava/lang/String;Ljava/lang/String;)(metric, pass);
+        };
+
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::record(Ljava/lang/String;D)(
+            name(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::MARKER_APPLY), appliedAt - receivedAt);
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::setGauge(Ljava/lang/String;D)(
+            name(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::MARKERS_ALIVE), state.markers.length);
+
+        if (state.requestChangedAt != null) {
+            metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::record(Ljava/lang/String;D)(
+                name(@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::KEYSTROKE_TO_MARKER), appliedAt - state.requestChangedAt);
+            state.requestChangedAt = null;
+        }
+    }-*/;
+
+    /**
+     * Record the statistics of the word memo, which the spelling worker sends with the results of each check.
+     */
+    private static native void wordMemoReported(final AceEditorMetrics metrics, final JavaScriptObject memo) /*-{
+        if (memo == null) {
+            return;
+        }
+
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::add(Ljava/lang/String;D)(
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::WORD_MEMO_HITS, memo.hits);
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::add(Ljava/lang/String;D)(
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::WORD_MEMO_MISSES, memo.misses);
+        metrics.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::setGauge(Ljava/lang/String;D)(
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::WORD_MEMO_SIZE, memo.size);
+    }-*/;
+
+    /**
+     * Create the worker for spell checking or conditional checking. Both use the editor's fused analysis worker when
+     * it is available, and a worker of their own otherwise. Conditional checking only uses the fused analysis worker
+     * when the built-in conditional checking worker has been turned on.
+     *
+     * @param feature SPELL_CHECKING or CONDITIONAL_CHECKING
+     * @return The web worker, or null if it could not be created
+     */
+    private native JavaScriptObject createAnalysisWorker(final AceEditorFeature feature) /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        var worker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisWorker;
+
+        if (feature == @edu.ycp.cs.dh.acegwt.client.ace.AceEditorFeature::CONDITIONAL_CHECKING &&
+            !@edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::isConditionalCheckingFused()()) {
+            return @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::createWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(feature);
+        }
+
+        if (worker == null) {
+            worker = @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::createAnalysisWorker()();
+            if (worker == null) {
+                return @edu.ycp.cs.dh.acegwt.client.ace.AceWorkers::createWorker(Ledu/ycp/cs/dh/acegwt/client/ace/AceEditorFeature;)(feature);
+            }
+
+            worker.aceGwtFused = true;
+            // The message listeners of the passes, which are also passed each result in a batch
+            worker.aceGwtListeners = [];
+            // The functions that check whether each pass needs to run
+            worker.aceGwtPasses = [];
+            // The requests waiting to be sent in the next batch
+            worker.aceGwtQueue = null;
+
+            worker.addEventListener('message', function(e) {
+                if (e.data.action == "analysis") {
+                    var results = e.data.results;
+                    for (var i = 0, resultsLength = results.length; i < resultsLength; ++i) {
+                        for (var j = 0, listenersLength = worker.aceGwtListeners.length; j < listenersLength; ++j) {
+                            worker.aceGwtListeners[j]({data: results[i]});
+                        }
+                    }
+                }
+            });
+
+            editor.on('change', function(e) {
+                var state = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(editor.getSession(), "document");
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::trackChangedRows(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(state, e.data);
+            });
+
+            // The passes are checked together, so their requests are sent as one batch
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisInterval = $wnd.setInterval(function() {
+                for (var i = 0, passesLength = worker.aceGwtPasses.length; i < passesLength; ++i) {
+                    worker.aceGwtPasses[i]();
+                }
+            }, 500);
+
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::analysisWorker = worker;
+        }
+
+        return worker;
+    }-*/;
+
+    /**
+     * Listen to the messages of an analysis worker. The listener of a pass using the fused analysis worker is also
+     * passed each result in the batches the worker posts.
+     */
+    private static native void listenToWorker(final JavaScriptObject worker, final JavaScriptObject listener) /*-{
+        worker.addEventListener('message', listener);
+        if (worker.aceGwtListeners != null) {
+            worker.aceGwtListeners.push(listener);
+        }
+    }-*/;
+
+    /**
+     * Keep track of the rows that have changed since a worker was last sent the text of a session. dirtyStart and
+     * dirtyEnd are the first and last changed rows, and dirtyDelta is the number of rows added (or removed, if
+     * negative) between them.
+     *
+     * @param state The analysis state of the session
+     * @param change The data of the ACE change event
+     */
+    private static native void trackChangedRows(final JavaScriptObject state, final JavaScriptObject change) /*-{
+        var range = change.range;
+        var rows = range.end.row - range.start.row;
+        var inserted = change.action == "insertText" || change.action == "insertLines";
+
+        if (state.dirtyStart == null) {
+            state.dirtyStart = range.start.row;
+            state.dirtyEnd = range.start.row;
+            state.dirtyDelta = 0;
+        } else {
+            state.dirtyStart = Math.min(state.dirtyStart, range.start.row);
+        }
+
+        if (inserted) {
+            if (state.dirtyEnd >= range.start.row) {
+                state.dirtyEnd += rows;
+            }
+            state.dirtyEnd = Math.max(state.dirtyEnd, range.end.row);
+            state.dirtyDelta += rows;
+        } else {
+            state.dirtyEnd = state.dirtyEnd > range.end.row ? state.dirtyEnd - rows : range.start.row;
+            state.dirtyDelta -= rows;
+        }
+    }-*/;
+
+    /**
+     * @return true if the fused analysis worker holds the current text of the session
+     */
+    private static native boolean isAnalysisDocumentCurrent(final JavaScriptObject worker, final JavaScriptObject session) /*-{
+        var state = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "document");
+        return worker.aceGwtModelledState === state && state.dirtyStart == null && state.modelledLength == session.getLength();
+    }-*/;
+
+    /**
+     * Add a pass's request to the next batch sent to the fused analysis worker. The batch is sent once the passes
+     * checked at the same time have added their requests.
+     */
+    private static native void queueAnalysis(final JavaScriptObject worker, final JavaScriptObject session,
+            final JavaScriptObject request) /*-{
+        if (worker.aceGwtQueue != null && worker.aceGwtQueue.session !== session) {
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::flushAnalysis(Lcom/google/gwt/core/client/JavaScriptObject;)(worker);
+        }
+
+        if (worker.aceGwtQueue == null) {
+            worker.aceGwtQueue = {session: session, requests: []};
+            $wnd.setTimeout(function() {
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::flushAnalysis(Lcom/google/gwt/core/client/JavaScriptObject;)(worker);
+            }, 0);
+        }
+
+        worker.aceGwtQueue.requests.push(request);
+    }-*/;
+
+    /**
+     * Bring the fused analysis worker's copy of the session up to date, sending only the changed rows if it holds the
+     * previous version and the changes don't cover most of the document, and then send the queued requests.
+     */
+    private static native void flushAnalysis(final JavaScriptObject worker) /*-{
+        var queue = worker.aceGwtQueue;
+        if (queue == null) {
+            return;
+        }
+        worker.aceGwtQueue = null;
+
+        var session = queue.session;
+        var state = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "document");
+        var length = session.getLength();
+
+        if (worker.aceGwtModelledState === state && state.dirtyStart == null && state.modelledLength == length) {
+            // The worker holds the current text
+        } else if (worker.aceGwtModelledState === state && state.dirtyStart != null &&
+            state.modelledLength + state.dirtyDelta == length &&
+            (state.dirtyEnd - state.dirtyStart + 1) * 2 < length) {
+
+            worker.postMessage({
+                action: "update",
+                start: state.dirtyStart,
+                oldEnd: state.dirtyEnd - state.dirtyDelta,
+                lines: session.getLines(state.dirtyStart, state.dirtyEnd)
+            });
+        } else {
+            worker.postMessage({action: "document", lines: session.getDocument().getAllLines()});
+        }
+
+        worker.aceGwtModelledState = state;
+        state.modelledLength = length;
+        state.dirtyStart = null;
+
+        worker.postMessage({action: "analyse", requests: queue.requests});
+    }-*/;
+
+    /**
+     * Returns the state an analysis pass (spelling, tags etc) keeps for a session. The state lives on the session itself, so
+     * the markers and results of a cached session remain valid while it is switched out of the editor.
+     *
+     * @param session The ACE EditSession
+     * @param pass The name of the analysis pass
+     * @return An object holding the ids of the markers added by the pass, and whether the session was modified since it was last analysed
+     */
+    private static native JavaScriptObject getAnalysisState(final JavaScriptObject session, final String pass) /*-{
+        if (session.aceGwtAnalysis == null) {
+            session.aceGwtAnalysis = {};
+        }
+
+        var state = session.aceGwtAnalysis[pass];
+        if (state == null) {
+            state = {markers: [], modified: true, session: session};
+            session.aceGwtAnalysis[pass] = state;
+        }
+
+        return state;
+    }-*/;
+
+    /**
+     * Open a document in the editor. A new EditSession is created for the text and placed in the document cache, replacing
+     * any session previously cached under the same key. Use {@link #switchDocument(String)} to return to a document that
+     * has already been opened.
+     *
+     * @param key The key that identifies the document
+     * @param text The text of the document
+     */
+    public void openDocument(final String key, final String text) {
+        measureCachedSessionNative(documentKey);
+        this.documentKey = key;
+        this.text = text;
+        // The new document gets a state of its own, which is kept in its cache entry
+        documentOpenedNative();
+        openDocumentNative(key, text);
+        markCleanNative(text);
+        evictCachedSessionsNative();
+    }
+
+    /**
+     * Display a document that was previously opened with {@link #openDocument(String, String)}. The cached EditSession is
+     * displayed as is, so the undo history, folds, tokenizer state and analysis results are retained.
+     *
+     * @param key The key that identifies the document
+     * @return true if the document was in the cache and is now displayed, false if it has to be opened again
+     */
+    public boolean switchDocument(final String key) {
+        final JavaScriptObject session = getCachedSessionNative(key);
+        if (session == null) {
+            return false;
+        }
+
+        if (!key.equals(documentKey)) {
+            measureCachedSessionNative(documentKey);
+        }
+
+        if (isEditorCreated()) {
+            displaySessionNative(session);
+        }
+
+        this.documentKey = key;
+        this.text = null;
+        documentSwitchedNative(key);
+        touchCachedSessionNative(key);
+        evictCachedSessionsNative();
+        return true;
+    }
+
+    /**
+     * Remove a document from the document cache. If the document is currently displayed it remains in the editor, but
+     * will no longer be cached once another document is displayed.
+     *
+     * @param key The key that identifies the document
+     */
+    public void closeDocument(final String key) {
+        if (key == null) {
+            return;
+        }
+
+        if (key.equals(documentKey)) {
+            this.text = getText();
+            this.documentKey = null;
+        }
+
+        uncacheSessionNative(key);
+    }
+
+    /**
+     * @return The key of the document being displayed, or null if the multi-document API is not being used
+     */
+    public String getDocumentKey() {
+        return documentKey;
+    }
+
+    /**
+     * Set the number of characters that the EditSessions in the document cache may hold. The session being displayed
+     * is not counted. When the budget is exceeded, the least recently used sessions are evicted.
+     *
+     * @param documentCacheBudget The maximum number of characters held by the cached sessions
+     */
+    public void setDocumentCacheBudget(final int documentCacheBudget) {
+        this.documentCacheBudget = documentCacheBudget;
+        evictCachedSessionsNative();
+    }
+
+    public int getDocumentCacheBudget() {
+        return documentCacheBudget;
+    }
+
+    private native void openDocumentNative(final String key, final String text) /*-{
+        if ($wnd.ace == undefined) {
+            $wnd.alert("window.ace is undefined! Please make sure you have included the appropriate JavaScript files.");
+            return;
+        }
+
+        var EditSession = $wnd.ace.require("ace/edit_session").EditSession;
+        var UndoManager = $wnd.ace.require("ace/undomanager").UndoManager;
+
+        var session = new EditSession(text || "");
+        session.setUndoManager(new UndoManager());
+
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::cacheSessionNative(Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(key, session);
+
+        if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor != null) {
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::displaySessionNative(Lcom/google/gwt/core/client/JavaScriptObject;)(session);
+        }
+    }-*/;
+
+    /**
+     * Display a session in the editor, applying the session level options that have been set on this widget.
+     *
+     * @param session The ACE EditSession to display
+     */
+    private native void displaySessionNative(final JavaScriptObject session) /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        var shortModeName = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::modeName;
+
+        if (editor == null) {
+            console.log("editor == null. displaySessionNative() was not called successfully.");
+            return;
+        }
+
+        session.setUseWorker(false);
+        session.setFoldStyle("markbeginend");
+        session.setUseSoftTabs(this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::useSoftTabs);
+        session.setTabSize(this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::tabSize);
+        session.setUseWrapMode(this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::useWrap);
+
+        editor.setSession(session);
+
+        if (shortModeName != null) {
+            // Set the mode once its script has been loaded, if the session is still displayed and the mode has not been
+            // changed again
+            var me = this;
+            @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)("mode", shortModeName, function(success) {
+                if (success && editor.getSession() === session &&
+                        me.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::modeName === shortModeName) {
+                    session.setMode("ace/mode/" + shortModeName);
+                }
+            });
+        }
+    }-*/;
+
+    private native JavaScriptObject getCachedSessionNative(final String key) /*-{
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        if (key == null || documentCache == null || !documentCache.entries.hasOwnProperty(key)) {
+            return null;
+        }
+        return documentCache.entries[key].session;
+    }-*/;
+
+    private native void cacheSessionNative(final String key, final JavaScriptObject session) /*-{
+        if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache == null) {
+            // entries maps keys to sessions, and order lists the keys from the least to the most recently used
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache = {entries: {}, order: []};
+        }
+
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::uncacheSessionNative(Ljava/lang/String;)(key);
+
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        // The entry also keeps the revision state of the document, so it is restored when the document is displayed again
+        documentCache.entries[key] = {
+            session: session,
+            size: 0,
+            textState: this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()().document
+        };
+        documentCache.order.push(key);
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::measureCachedSessionNative(Ljava/lang/String;)(key);
+    }-*/;
+
+    private native void uncacheSessionNative(final String key) /*-{
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        if (key == null || documentCache == null || !documentCache.entries.hasOwnProperty(key)) {
+            return;
+        }
+
+        var session = documentCache.entries[key].session;
+        delete documentCache.entries[key];
+        documentCache.order.splice(documentCache.order.indexOf(key), 1);
+
+        // Stop any pending background tokenizing of a session that is not displayed
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        if ((editor == null || editor.getSession() !== session) && session.bgTokenizer) {
+            session.bgTokenizer.stop();
+        }
+    }-*/;
+
+    /**
+     * Mark a cached session as the most recently used.
+     */
+    private native void touchCachedSessionNative(final String key) /*-{
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        if (key == null || documentCache == null || !documentCache.entries.hasOwnProperty(key)) {
+            return;
+        }
+
+        documentCache.order.splice(documentCache.order.indexOf(key), 1);
+        documentCache.order.push(key);
+    }-*/;
+
+    /**
+     * Record the number of characters held by a cached session. This is done as a session is switched out of the
+     * editor, as only the displayed session can be modified.
+     */
+    private native void measureCachedSessionNative(final String key) /*-{
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        if (key == null || documentCache == null || !documentCache.entries.hasOwnProperty(key)) {
+            return;
+        }
+
+        var entry = documentCache.entries[key];
+        var lines = entry.session.getDocument().getAllLines();
+        var size = 0;
+        for (var i = 0, linesLength = lines.length; i < linesLength; ++i) {
+            size += lines[i].length + 1;
+        }
+        entry.size = size;
+    }-*/;
+
+    /**
+     * Evict the least recently used sessions until the sessions that are not displayed fit in the cache budget.
+     */
+    private native void evictCachedSessionsNative() /*-{
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        var documentKey = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentKey;
+        var budget = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCacheBudget;
+
+        if (documentCache == null) {
+            return;
+        }
+
+        var size = 0;
+        for (var i = 0, orderLength = documentCache.order.length; i < orderLength; ++i) {
+            var key = documentCache.order[i];
+            if (key !== documentKey) {
+                size += documentCache.entries[key].size;
+            }
+        }
+
+        var index = 0;
+        while (size > budget && index < documentCache.order.length) {
+            var key = documentCache.order[index];
+            if (key === documentKey) {
+                ++index;
+            } else {
+                size -= documentCache.entries[key].size;
+                this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::uncacheSessionNative(Ljava/lang/String;)(key);
+            }
+        }
+    }-*/;
+
     public void enableAutoCodeFolding(final String regex, final String flags) {
         codeFoldingRegex = regex;
         codeFoldingRegexFlags = flags;
@@ -2156,7 +4013,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     public native void clearAnnotations() /*-{
         try {
-            console.log("ENTER AceEditor.clearAnnotations()")
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.clearAnnotations()")
 
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
             if (editor != null) {
@@ -2167,7 +4024,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
 
             this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::resetAnnotations();
         } finally {
-            console.log("EXIT AceEditor.clearAnnotations()")
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.clearAnnotations()")
         }
     }-*/;
 
@@ -2184,7 +4041,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
      */
     public native void clearMarkers() /*-{
         try {
-            console.log("ENTER AceEditor.clearMarkers()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("ENTER AceEditor.clearMarkers()");
             var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
 
             if (editor != null) {
@@ -2206,7 +4063,7 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
             }
 
         } finally {
-            console.log("EXIT AceEditor.clearMarkers()");
+            @edu.ycp.cs.dh.acegwt.client.ace.AceEditorLog::verbose(Ljava/lang/String;)("EXIT AceEditor.clearMarkers()");
         }
     }-*/;
 
@@ -2260,12 +4117,210 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
                 setText(value);
             }
 
+            /**
+             * The text is only read from the document if it has changed since it was last read. The fingerprint is not
+             * used here, as a collision would return stale text.
+             */
             @Override
             public String getValue() {
-                return getText();
+                final int revision = getRevision();
+                if (revision != editorValueRevision) {
+                    editorValue = getText();
+                    editorValueRevision = revision;
+                }
+                return editorValue;
             }
         };
     }
+
+    /**
+     * @return A number that increases each time the text changes. Comparing it with an earlier value is a cheap way to
+     *         find out whether the text may have changed in between, without reading the text.
+     */
+    public int getRevision() {
+        return getRevisionNumberNative();
+    }
+
+    /**
+     * @return true if the text differs from the text when {@link #setText(String)}, {@link #openDocument(String, String)}
+     *         or {@link #markClean()} was last called for the displayed document. The hashes of the rows are compared
+     *         rather than the text, so edits that are undone, or typed back in, leave the editor clean.
+     */
+    public native boolean isDirty() /*-{
+        var state = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()().document;
+        if (state.changes == state.cleanChanges) {
+            return false;
+        }
+
+        // The fingerprint of text that was set is only found once it is needed
+        if (state.cleanFingerprint == null) {
+            var hashes = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::hashLines(Lcom/google/gwt/core/client/JavaScriptObject;)((state.cleanText || "").split(/\r\n|\r|\n/));
+            state.cleanFingerprint = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::combineHashes(Lcom/google/gwt/core/client/JavaScriptObject;)(hashes);
+            state.cleanText = null;
+        }
+
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getFingerprintNative()() != state.cleanFingerprint;
+    }-*/;
+
+    /**
+     * Make the current text the one {@link #isDirty()} compares with, for example once it has been saved.
+     */
+    public void markClean() {
+        markCleanNative(null);
+    }
+
+    /**
+     * Make the text the one {@link #isDirty()} compares with.
+     *
+     * @param text The current text if the caller has it, so its fingerprint can be found the first time isDirty() needs
+     *             it rather than straight away. null to find the fingerprint of the current text now.
+     */
+    private native void markCleanNative(final String text) /*-{
+        var state = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()().document;
+        state.cleanChanges = state.changes;
+
+        if (text != null && state.lineHashes == null) {
+            state.cleanFingerprint = null;
+            state.cleanText = text;
+        } else {
+            state.cleanFingerprint = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getFingerprintNative()();
+            state.cleanText = null;
+        }
+    }-*/;
+
+    private native JavaScriptObject getRevisionsNative() /*-{
+        if (this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::revisions == null) {
+            this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::revisions = {
+                revision: 0,
+                document: @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createTextStateNative()()
+            };
+        }
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::revisions;
+    }-*/;
+
+    /**
+     * @return The state of a document's text: the number of changes made to it, the hashes of its rows (null until a
+     *         fingerprint is needed, and again after the text is replaced as a whole), and the change count and
+     *         fingerprint it was last marked clean at. cleanFingerprint is null while it is still to be found from
+     *         cleanText.
+     */
+    private static native JavaScriptObject createTextStateNative() /*-{
+        return {changes: 0, lineHashes: null, cleanChanges: 0, cleanFingerprint: null, cleanText: ""};
+    }-*/;
+
+    private native int getRevisionNumberNative() /*-{
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()().revision;
+    }-*/;
+
+    /**
+     * Called when the text has been replaced as a whole. The hashes of the rows are found again when they are next
+     * needed.
+     */
+    private native void textReplaced() /*-{
+        var revisions = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()();
+        ++revisions.revision;
+        ++revisions.document.changes;
+        revisions.document.lineHashes = null;
+    }-*/;
+
+    /**
+     * Called when a new document is opened. It starts with a state of its own.
+     */
+    private native void documentOpenedNative() /*-{
+        var revisions = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()();
+        ++revisions.revision;
+        revisions.document = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::createTextStateNative()();
+    }-*/;
+
+    /**
+     * Called when a cached document is displayed. Its own state, kept in its cache entry, becomes the current one.
+     */
+    private native void documentSwitchedNative(final String key) /*-{
+        var revisions = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()();
+        var documentCache = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::documentCache;
+        ++revisions.revision;
+
+        if (key != null && documentCache != null && documentCache.entries.hasOwnProperty(key)) {
+            revisions.document = documentCache.entries[key].textState;
+        }
+    }-*/;
+
+    /**
+     * Count a change to the text, and hash the rows it changed
+     */
+    private static native void textChanged(final JavaScriptObject revisions, final JavaScriptObject session,
+            final JavaScriptObject change) /*-{
+        ++revisions.revision;
+        var state = revisions.document;
+        ++state.changes;
+        if (state.lineHashes == null) {
+            return;
+        }
+
+        // An insert turns its first row into the rows of the range, and a removal turns the rows of the range into one
+        var range = change.range;
+        var rows = range.end.row - range.start.row;
+        if (rows > @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::MAX_REHASHED_ROWS) {
+            state.lineHashes = null;
+            return;
+        }
+
+        var inserted = change.action == "insertText" || change.action == "insertLines";
+        var replacement = [range.start.row, inserted ? 1 : rows + 1];
+        for (var row = range.start.row, end = inserted ? range.end.row : range.start.row; row <= end; ++row) {
+            replacement.push(@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::hashLine(Ljava/lang/String;)(session.getLine(row)));
+        }
+        Array.prototype.splice.apply(state.lineHashes, replacement);
+    }-*/;
+
+    /**
+     * @return A fingerprint of the text, combining the hashes of its rows in order. The hashes are kept up to date as
+     *         the text changes, so this does not read the text.
+     */
+    private native double getFingerprintNative() /*-{
+        var state = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getRevisionsNative()().document;
+        if (state.lineHashes == null) {
+            var session = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getTextSessionNative()();
+            var text = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::text;
+            var lines = session != null ? session.getDocument().getAllLines() : (text || "").split(/\r\n|\r|\n/);
+            state.lineHashes = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::hashLines(Lcom/google/gwt/core/client/JavaScriptObject;)(lines);
+        }
+
+        return @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::combineHashes(Lcom/google/gwt/core/client/JavaScriptObject;)(state.lineHashes);
+    }-*/;
+
+    private static native JavaScriptObject hashLines(final JavaScriptObject lines) /*-{
+        var hashes = [];
+        for (var i = 0, linesLength = lines.length; i < linesLength; ++i) {
+            hashes.push(@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::hashLine(Ljava/lang/String;)(lines[i]));
+        }
+        return hashes;
+    }-*/;
+
+    /**
+     * @return The hashes of the rows combined in order. Each hash holds two 32 bit hashes, the second cut down to 21
+     *         bits, so they fit in a double.
+     */
+    private static native double combineHashes(final JavaScriptObject lineHashes) /*-{
+        var low = lineHashes.length;
+        var high = 0;
+        for (var i = 0, hashesLength = lineHashes.length; i < hashesLength; ++i) {
+            low = (low * 31 + (lineHashes[i] >>> 0)) | 0;
+            high = (high * 131 + Math.floor(lineHashes[i] / 4294967296)) | 0;
+        }
+        return (low >>> 0) + (high & 0x1fffff) * 4294967296;
+    }-*/;
+
+    private static native double hashLine(final String line) /*-{
+        var low = 0;
+        var high = 0;
+        for (var i = 0, lineLength = line.length; i < lineLength; ++i) {
+            var c = line.charCodeAt(i);
+            low = (low * 31 + c) | 0;
+            high = (high * 131 + c) | 0;
+        }
+        return (low >>> 0) + (high & 0x1fffff) * 4294967296;
+    }-*/;
     
     /**
      * Wraps the currently selected text with the start and end strings
@@ -2385,7 +4440,211 @@ public class AceEditor extends Composite implements RequiresResize, IsEditor<Lea
     }
 
 
+    /**
+     * @return The performance metrics recorded by this editor
+     */
+    public AceEditorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The language of the text outside of any element with a lang or xml:lang attribute
+     */
+    public String getSpellCheckingLanguage() {
+        return typoJsLang == null ? DEFAULT_LANGUAGE : typoJsLang;
+    }
+
+    /**
+     * Change the language used to check the spelling of the text outside of any element with a lang or xml:lang
+     * attribute. The spelling worker loads the dictionaries of a language the first time it is used, so the language
+     * can be changed without restarting the worker. The dictionaries are loaded from the TypoJS base URL, e.g.
+     * de_DE.aff and de_DE.dic, and text in a language without dictionaries is not checked.
+     *
+     * @param lang The language code of the dictionaries, e.g. en_US
+     */
+    public void setSpellCheckingLanguage(final String lang) {
+        typoJsLang = lang;
+    }
+
+    /**
+     * @return The words spell checking accepts on top of the dictionaries
+     */
+    public AceCustomDictionary getCustomDictionary() {
+        return customDictionary;
+    }
+
+    /**
+     * Replace the custom dictionary. The displayed document is checked again with the new words.
+     *
+     * @param customDictionary The words spell checking will accept on top of the dictionaries
+     */
+    public void setCustomDictionary(final AceCustomDictionary customDictionary) {
+        final AceCustomDictionary oldDictionary = this.customDictionary;
+        this.customDictionary = customDictionary == null
+                ? AceCustomDictionary.get(AceCustomDictionary.DEFAULT_NAME) : customDictionary;
+
+        if (oldDictionary != this.customDictionary && customDictionaryRegistration != null) {
+            unwatchCustomDictionary();
+            watchCustomDictionary();
+            customDictionaryReplaced(toJsArray(oldDictionary.getWords()), getCustomWords());
+        }
+    }
+
+    /**
+     * Add a word to the custom dictionary, so it is no longer marked as misspelled in any editor using the dictionary.
+     *
+     * @return true if the word was not already in the dictionary
+     */
+    public boolean addToDictionary(final String word) {
+        return customDictionary.add(word);
+    }
+
+    /**
+     * Remove a word from the custom dictionary.
+     *
+     * @return true if the word was in the dictionary
+     */
+    public boolean removeFromDictionary(final String word) {
+        return customDictionary.remove(word);
+    }
+
+    private JsArrayString getCustomWords() {
+        return toJsArray(customDictionary.getWords());
+    }
+
+    private JsArrayString getSpellCheckingSkipElementsArray() {
+        return spellCheckingSkipElements == null ? null : toJsArray(spellCheckingSkipElements);
+    }
+
+    private static JsArrayString toJsArray(final List<String> values) {
+        final JsArrayString array = JavaScriptObject.createArray().cast();
+        for (final String value : values) {
+            array.push(value);
+        }
+        return array;
+    }
+
+    private void watchCustomDictionary() {
+        if (customDictionaryRegistration == null) {
+            customDictionaryRegistration = customDictionary.addChangeHandler(new AceCustomDictionary.ChangeHandler() {
+                @Override
+                public void onChange(final String word, final boolean added) {
+                    customWordChanged(word, added);
+                }
+            });
+        }
+    }
+
+    private void unwatchCustomDictionary() {
+        if (customDictionaryRegistration != null) {
+            customDictionaryRegistration.removeHandler();
+            customDictionaryRegistration = null;
+        }
+    }
+
+    /**
+     * Update the spelling worker with a word that was added to or removed from the custom dictionary, and check the rows
+     * of the displayed document that contain the word again. Any other sessions are checked in full when they are next
+     * displayed.
+     */
+    private native void customWordChanged(final String word, final boolean added) /*-{
+        var editor = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::editor;
+        var spellingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
+
+        if (spellingWorker == null) {
+            return;
+        }
+
+        spellingWorker.postMessage({action: added ? "addWords" : "removeWords", words: [word]});
+        ++spellingWorker.aceGwtDictionaryVersion;
+
+        if (editor == null) {
+            console.log("editor == null. customWordChanged() was not called successfully.");
+            return;
+        }
+
+        // Any capitalization of the word may be affected
+        var session = editor.getSession();
+        var lines = session.getDocument().getAllLines();
+        var lowercaseWord = word.toLowerCase();
+        var rows = [];
+        for (var row = 0, linesLength = lines.length; row < linesLength; ++row) {
+            if (lines[row].toLowerCase().indexOf(lowercaseWord) != -1) {
+                rows.push(row);
+            }
+        }
+
+        var state = @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getAnalysisState(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;)(session, "spelling");
+        state.dictionaryVersion = spellingWorker.aceGwtDictionaryVersion;
+
+        if (rows.length != 0) {
+            var lang = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::getSpellCheckingLanguage()();
+            spellingWorker.aceGwtRechecks.push(session);
+
+            // The worker finds the checked segments of the rows from the current text, as the rows may have been edited,
+            // or moved into another element, since the last full check
+            if (spellingWorker.aceGwtFused === true) {
+                // The fused analysis worker is brought up to date with the changed rows before the recheck
+                @edu.ycp.cs.dh.acegwt.client.ace.AceEditor::queueAnalysis(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(spellingWorker, session, {action: "recheck", rows: rows, lang: lang});
+            } else {
+                spellingWorker.postMessage({action: "recheck", lines: lines, rows: rows, lang: lang});
+            }
+        }
+    }-*/;
+
+    /**
+     * Swap the words of the old custom dictionary for the new one in the spelling worker. Every session is checked again
+     * in full.
+     */
+    private native void customDictionaryReplaced(final JsArrayString oldWords, final JsArrayString newWords) /*-{
+        var spellingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::spellCheckingWorker;
+
+        if (spellingWorker == null) {
+            return;
+        }
+
+        spellingWorker.postMessage({action: "removeWords", words: oldWords});
+        spellingWorker.postMessage({action: "addWords", words: newWords});
+        ++spellingWorker.aceGwtDictionaryVersion;
+    }-*/;
+
     public void setCondition(final String condition) {
         this.condition = condition;
+        checkConditionsNative();
+    }
+
+    public String getCondition() {
+        return condition;
     }
+
+    /**
+     * Set the conditions the user is likely to switch to, such as the build profiles of the project. While the
+     * conditional checking worker is idle it finds their exclusions for the current text, so {@link #setCondition(String)}
+     * displays them without waiting for the worker. The exclusions of the {@value #CONDITION_CACHE_SIZE} most recently
+     * used conditions are cached for each document until it is edited.
+     *
+     * @param profiles The conditions, in the order they should be found
+     */
+    public void setConditionProfiles(final List<String> profiles) {
+        conditionProfiles.clear();
+        if (profiles != null) {
+            conditionProfiles.addAll(profiles);
+        }
+    }
+
+    public List<String> getConditionProfiles() {
+        return new ArrayList<String>(conditionProfiles);
+    }
+
+    private JsArrayString getConditionProfilesArray() {
+        return toJsArray(conditionProfiles);
+    }
+
+    private native void checkConditionsNative() /*-{
+        var conditionalMatchingWorker = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditor::conditionalMatchingWorker;
+
+        if (conditionalMatchingWorker != null && conditionalMatchingWorker.aceGwtCheckConditions != null) {
+            conditionalMatchingWorker.aceGwtCheckConditions();
+        }
+    }-*/;
 }
@@ -0,0 +1,11 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+/**
+ * The {@link AceEditorLog} used when the acegwt.verbose property is true.
+ */
+class AceEditorConsoleLog extends AceEditorLog {
+    @Override
+    native void log(final String message) /*-{
+        console.log(message);
+    }-*/;
+}
@@ -1,5 +1,7 @@
 package edu.ycp.cs.dh.acegwt.client.ace;
 
+import java.util.List;
+
 import edu.ycp.cs.dh.acegwt.client.tagdb.XMLElementDB;
 
 public class AceEditorData {
@@ -7,6 +9,9 @@ public class AceEditorData {
     private String typoJsBaseUrl;
     private String typeJsLang;
     private XMLElementDB XMLElementDB;
+    private AceCustomDictionary customDictionary;
+    private int dictionaryMemoryBudget;
+    private List<String> spellCheckingSkipElements;
 
     public String getRestUrl() {
         return restUrl;
@@ -39,4 +44,42 @@ public class AceEditorData {
     public void setTypeJsLang(String typeJsLang) {
         this.typeJsLang = typeJsLang;
     }
+
+    public AceCustomDictionary getCustomDictionary() {
+        return customDictionary;
+    }
+
+    /**
+     * @param customDictionary The words spell checking accepts on top of the dictionaries. Editors use
+     *                         {@link AceCustomDictionary#DEFAULT_NAME} if this is not set.
+     */
+    public void setCustomDictionary(AceCustomDictionary customDictionary) {
+        this.customDictionary = customDictionary;
+    }
+
+    public int getDictionaryMemoryBudget() {
+        return dictionaryMemoryBudget;
+    }
+
+    /**
+     * @param dictionaryMemoryBudget The number of bytes the dictionaries of the spelling worker may use. When the
+     *                               dictionaries of another language are needed, the least recently used languages are
+     *                               unloaded to stay within the budget. 0 uses the default of 64MB.
+     */
+    public void setDictionaryMemoryBudget(int dictionaryMemoryBudget) {
+        this.dictionaryMemoryBudget = dictionaryMemoryBudget;
+    }
+
+    public List<String> getSpellCheckingSkipElements() {
+        return spellCheckingSkipElements;
+    }
+
+    /**
+     * @param spellCheckingSkipElements The names of the elements whose content is not spell checked. Comments, CDATA
+     *                                  sections and processing instructions are never checked. null skips the content
+     *                                  of programlisting, screen and synopsis elements.
+     */
+    public void setSpellCheckingSkipElements(List<String> spellCheckingSkipElements) {
+        this.spellCheckingSkipElements = spellCheckingSkipElements;
+    }
 }
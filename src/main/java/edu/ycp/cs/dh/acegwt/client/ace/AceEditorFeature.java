@@ -0,0 +1,14 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+/**
+ * Enumeration for the optional features of the editor. The code for each feature is compiled into its own GWT
+ * fragment, which is only downloaded once an editor with the feature enabled is created.
+ */
+public enum AceEditorFeature {
+	CONTEXT_MENU,
+	SPELL_CHECKING,
+	CONDITIONAL_CHECKING,
+	TAG_MATCHING,
+	SPEC_MATCHING,
+	AUTO_COMPLETE
+}
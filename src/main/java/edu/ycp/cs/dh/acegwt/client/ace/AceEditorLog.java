@@ -0,0 +1,24 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import com.google.gwt.core.client.GWT;
+
+/**
+ * Verbose tracing for the editor. By default the trace methods are empty, so the GWT compiler removes the calls and their
+ * messages. Set the acegwt.verbose property to true in the host module to log the traces to the console:
+ *
+ * <pre>&lt;set-property name="acegwt.verbose" value="true"/&gt;</pre>
+ */
+class AceEditorLog {
+    private static final AceEditorLog INSTANCE = GWT.create(AceEditorLog.class);
+
+    /**
+     * Log a verbose trace message.
+     */
+    static void verbose(final String message) {
+        INSTANCE.log(message);
+    }
+
+    void log(final String message) {
+
+    }
+}
@@ -0,0 +1,247 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayString;
+import com.google.web.bindery.event.shared.HandlerRegistration;
+
+/**
+ * Counters, gauges and latency histograms recorded by an {@link AceEditor}. Host applications can poll the values, or
+ * add a {@link MetricHandler} to be told about each sample as it is recorded.
+ *
+ * Metrics that belong to an analysis pass are named by {@link #name(String, String)}, e.g. "workerRoundTrip.spelling".
+ * All times are in milliseconds.
+ */
+public class AceEditorMetrics {
+    /**
+     * Histogram of the time between posting a document to an analysis worker and receiving its results
+     */
+    public static final String WORKER_ROUND_TRIP = "workerRoundTrip";
+    /**
+     * Histogram of the time taken to replace the markers of an analysis pass with the results from its worker
+     */
+    public static final String MARKER_APPLY = "markerApply";
+    /**
+     * Histogram of the time between the first edit after an analysis and the markers reflecting that edit
+     */
+    public static final String KEYSTROKE_TO_MARKER = "keystrokeToMarker";
+    /**
+     * Histogram of the time taken by the spelling worker to load its dictionaries
+     */
+    public static final String DICTIONARY_LOAD = "dictionaryLoad";
+    /**
+     * Gauge of the number of markers an analysis pass has in the displayed document
+     */
+    public static final String MARKERS_ALIVE = "markersAlive";
+    /**
+     * Counter of the number of documents posted to an analysis worker
+     */
+    public static final String WORKER_REQUESTS = "workerRequests";
+    /**
+     * Counter of the words the spelling worker found in its memo of dictionary results
+     */
+    public static final String WORD_MEMO_HITS = "wordMemoHits";
+    /**
+     * Counter of the words the spelling worker had to look up in its dictionaries
+     */
+    public static final String WORD_MEMO_MISSES = "wordMemoMisses";
+    /**
+     * Gauge of the number of entries in the spelling worker's memo of dictionary results
+     */
+    public static final String WORD_MEMO_SIZE = "wordMemoSize";
+    /**
+     * Counter of the condition changes that were displayed from the cached results of the conditional checking worker
+     */
+    public static final String CONDITION_CACHE_HITS = "conditionCacheHits";
+
+    public static final String SPELLING = "spelling";
+    public static final String TAGS = "tags";
+    public static final String SPEC = "spec";
+    public static final String CONDITIONAL = "conditional";
+
+    /**
+     * Called each time a histogram sample is recorded
+     */
+    public interface MetricHandler {
+        void onMetric(String name, double value);
+    }
+
+    /**
+     * A latency histogram. Samples are counted in buckets whose upper bounds are powers of two, from 1ms to 16s.
+     */
+    public static final class Histogram extends JavaScriptObject {
+        protected Histogram() {
+
+        }
+
+        public native int getCount() /*-{
+            return this.count;
+        }-*/;
+
+        public native double getSum() /*-{
+            return this.sum;
+        }-*/;
+
+        public native double getMin() /*-{
+            return this.min;
+        }-*/;
+
+        public native double getMax() /*-{
+            return this.max;
+        }-*/;
+
+        public double getMean() {
+            return getCount() == 0 ? 0 : getSum() / getCount();
+        }
+
+        /**
+         * @param percentile A value between 0 and 100
+         * @return The upper bound of the bucket holding the percentile, which is never more than the largest sample
+         */
+        public native double getPercentile(final double percentile) /*-{
+            var target = Math.ceil(this.count * percentile / 100);
+            var seen = 0;
+            for (var i = 0, bucketsLength = this.buckets.length; i < bucketsLength; ++i) {
+                seen += this.buckets[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(Math.pow(2, i), this.max);
+                }
+            }
+            return this.max;
+        }-*/;
+    }
+
+    private JavaScriptObject values = createValues();
+    private final List<MetricHandler> handlers = new ArrayList<MetricHandler>();
+
+    /**
+     * @return The name of a metric recorded for an analysis pass
+     */
+    public static String name(final String metric, final String pass) {
+        return metric + "." + pass;
+    }
+
+    /**
+     * @return A high resolution timestamp, in milliseconds
+     */
+    static native double now() /*-{
+        return $wnd.performance && $wnd.performance.now ? $wnd.performance.now() : new Date().getTime();
+    }-*/;
+
+    public HandlerRegistration addMetricHandler(final MetricHandler handler) {
+        handlers.add(handler);
+        return new HandlerRegistration() {
+            @Override
+            public void removeHandler() {
+                handlers.remove(handler);
+            }
+        };
+    }
+
+    /**
+     * @return The histogram, or null if no samples have been recorded
+     */
+    public native Histogram getHistogram(final String name) /*-{
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.histograms[name] || null;
+    }-*/;
+
+    public native double getCounter(final String name) /*-{
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.counters[name] || 0;
+    }-*/;
+
+    public native double getGauge(final String name) /*-{
+        return this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.gauges[name] || 0;
+    }-*/;
+
+    /**
+     * @return The fraction (0 to 1) of the words checked by the spelling worker that were found in its memo
+     */
+    public double getWordMemoHitRate() {
+        final double hits = getCounter(WORD_MEMO_HITS);
+        final double lookups = hits + getCounter(WORD_MEMO_MISSES);
+        return lookups == 0 ? 0 : hits / lookups;
+    }
+
+    /**
+     * @return The number of analysis markers in the displayed document, over all passes
+     */
+    public native int getMarkersAlive() /*-{
+        var gauges = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.gauges;
+        var prefix = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::MARKERS_ALIVE + ".";
+        var total = 0;
+        for (var name in gauges) {
+            if (name.indexOf(prefix) == 0) {
+                total += gauges[name];
+            }
+        }
+        return total;
+    }-*/;
+
+    /**
+     * @return The names of the histograms that have samples
+     */
+    public native JsArrayString getHistogramNames() /*-{
+        var names = [];
+        for (var name in this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.histograms) {
+            names.push(name);
+        }
+        return names;
+    }-*/;
+
+    /**
+     * Forget all the recorded values.
+     */
+    public void reset() {
+        values = createValues();
+    }
+
+    void record(final String name, final double value) {
+        recordNative(name, value);
+        for (final MetricHandler handler : new ArrayList<MetricHandler>(handlers)) {
+            handler.onMetric(name, value);
+        }
+    }
+
+    void increment(final String name) {
+        add(name, 1);
+    }
+
+    native void add(final String name, final double amount) /*-{
+        var counters = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.counters;
+        counters[name] = (counters[name] || 0) + amount;
+    }-*/;
+
+    native void setGauge(final String name, final double value) /*-{
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.gauges[name] = value;
+    }-*/;
+
+    /**
+     * Set every gauge to 0, used when the markers of the editor are removed.
+     */
+    native void clearGauges() /*-{
+        this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.gauges = {};
+    }-*/;
+
+    private native void recordNative(final String name, final double value) /*-{
+        var histograms = this.@edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::values.histograms;
+        var histogram = histograms[name];
+        if (histogram == null) {
+            histogram = {count: 0, sum: 0, min: value, max: value, buckets: [0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0]};
+            histograms[name] = histogram;
+        }
+
+        histogram.count++;
+        histogram.sum += value;
+        histogram.min = Math.min(histogram.min, value);
+        histogram.max = Math.max(histogram.max, value);
+
+        var bucket = value <= 1 ? 0 : Math.ceil(Math.log(value) / Math.LN2);
+        histogram.buckets[Math.min(bucket, histogram.buckets.length - 1)]++;
+    }-*/;
+
+    private static native JavaScriptObject createValues() /*-{
+        return {histograms: {}, counters: {}, gauges: {}};
+    }-*/;
+}
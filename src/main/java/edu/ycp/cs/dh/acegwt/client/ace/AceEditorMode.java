@@ -22,8 +22,8 @@ package edu.ycp.cs.dh.acegwt.client.ace;
 
 /**
  * Enumeration for ACE editor modes.
- * Note that the corresponding .js file must be loaded
- * before a mode can be set.
+ * The corresponding .js file is loaded on demand by the
+ * {@link AceModuleLoader} when a mode is set.
  */
 public enum AceEditorMode {
 	/** c9search */
@@ -22,8 +22,8 @@ package edu.ycp.cs.dh.acegwt.client.ace;
 
 /**
  * Enumeration for ACE editor themes.
- * Note that the corresponding .js file must be loaded
- * before a theme can be set.
+ * The corresponding .js file is loaded on demand by the
+ * {@link AceModuleLoader} when a theme is set.
  */
 public enum AceEditorTheme {
 	CHROME("chrome"),
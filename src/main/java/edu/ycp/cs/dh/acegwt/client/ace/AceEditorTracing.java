@@ -0,0 +1,147 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * Traces the editor lifecycle and analysis passes as User Timing spans (performance.mark() and performance.measure()),
+ * which are displayed by the browser's performance tools. Each span carries the id of the editor and the number of
+ * lines in its document.
+ *
+ * Tracing is off by default. While it is enabled, spans can also be recorded and exported in the Chrome trace event
+ * format, which can be loaded into chrome://tracing or the performance panel of the developer tools:
+ *
+ * <pre>
+ * AceEditorTracing.startRecording();
+ * ...
+ * String json = AceEditorTracing.stopRecording();
+ * </pre>
+ *
+ * The spans are:
+ * * startEditor, destroy and setText
+ * * worker.[pass], from posting a document to an analysis worker until its results are received
+ * * markers.[pass], applying the results of an analysis pass as markers
+ */
+public final class AceEditorTracing {
+    /**
+     * The most events that are recorded, so a forgotten recording can not use an unbounded amount of memory
+     */
+    private static final int MAX_RECORDED_EVENTS = 100000;
+
+    private static boolean enabled = false;
+    /**
+     * The recorded trace events, or null if spans are not being recorded
+     */
+    private static JavaScriptObject recording = null;
+    private static int nextSpanId = 0;
+
+    private AceEditorTracing() {
+
+    }
+
+    /**
+     * @param enabled true to add User Timing spans for the editor, false otherwise
+     */
+    public static void setEnabled(final boolean enabled) {
+        AceEditorTracing.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable tracing, and start recording the spans.
+     */
+    public static void startRecording() {
+        enabled = true;
+        recording = JavaScriptObject.createArray();
+    }
+
+    /**
+     * Stop recording spans. Tracing remains enabled.
+     *
+     * @return The spans recorded since {@link #startRecording()}, as a Chrome trace format JSON document
+     */
+    public static native String stopRecording() /*-{
+        var events = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::recording || [];
+        @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::recording = null;
+        return $wnd.JSON.stringify({traceEvents: events, displayTimeUnit: "ms"});
+    }-*/;
+
+    /**
+     * Start a span.
+     *
+     * @param name The name of the span
+     * @param editorId The id of the editor
+     * @return The span, or null if tracing is not enabled
+     */
+    static native JavaScriptObject begin(final String name, final String editorId) /*-{
+        if (!@edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::enabled) {
+            return null;
+        }
+
+        var performance = $wnd.performance;
+        var span = {
+            name: "acegwt:" + name,
+            mark: "acegwt:" + name + ":" + (@edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::nextSpanId++),
+            start: @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()(),
+            args: {editor: editorId}
+        };
+
+        if (performance && performance.mark) {
+            performance.mark(span.mark);
+        }
+
+        return span;
+    }-*/;
+
+    /**
+     * End a span.
+     *
+     * @param span The span returned by {@link #begin(String, String)}, which may be null
+     * @param lines The number of lines in the document
+     */
+    static native void end(final JavaScriptObject span, final int lines) /*-{
+        if (span == null) {
+            return;
+        }
+
+        var performance = $wnd.performance;
+        var end = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorMetrics::now()();
+        span.args.lines = lines;
+
+        if (performance && performance.measure) {
+            try {
+                // Newer browsers attach the details to the measure
+                performance.measure(span.name, {start: span.mark, end: end, detail: span.args});
+            } catch (e) {
+                try {
+                    performance.measure(span.name, span.mark);
+                } catch (e2) {
+                    // The mark was cleared, so there is nothing to measure
+                }
+            }
+
+            // The performance tools have already seen the entries, so don't let them fill the buffer
+            performance.clearMarks(span.mark);
+            if (performance.clearMeasures) {
+                performance.clearMeasures(span.name);
+            }
+        }
+
+        var recording = @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::recording;
+        if (recording != null && recording.length < @edu.ycp.cs.dh.acegwt.client.ace.AceEditorTracing::MAX_RECORDED_EVENTS) {
+            // Complete events, with the timestamps and duration in microseconds
+            recording.push({
+                name: span.name,
+                cat: "acegwt",
+                ph: "X",
+                ts: Math.round(span.start * 1000),
+                dur: Math.round((end - span.start) * 1000),
+                pid: 1,
+                tid: 1,
+                args: span.args
+            });
+        }
+    }-*/;
+}
@@ -0,0 +1,239 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * Loads ACE mode and theme scripts on demand.
+ *
+ * The mode-*.js and theme-*.js files no longer have to be included in the main HTML file. They are fetched the first time
+ * a mode or theme is used, and each script is only ever requested once, no matter how many editors ask for it at the
+ * same time. Editors apply a mode or theme once its script has loaded, and failures are logged to the console.
+ *
+ * By default the scripts are loaded from the ace directory of the GWT module, which is where the files bundled in this
+ * artifact are published. Call {@link #setBaseUrl(String)} to load them from somewhere else. ACE's own paths, which it
+ * uses for the modules it loads itself, are only pointed at the base URL if the host page has not set them, or if
+ * {@link #setBaseUrl(String)} has been called.
+ *
+ * If the host page includes the bundles/manifest.js file built by the bundle-assets Maven profile, the modes and themes
+ * listed in the manifest are loaded from their minified, content hashed bundles instead. Anything not in the manifest
+ * is still loaded from the base URL. The spelling dictionaries listed in the manifest are loaded from their content
+ * hashed files too (see {@link #getDictionaryUrlsNative()}).
+ */
+public final class AceModuleLoader {
+    /**
+     * The URL the scripts are loaded from, or null to use the ace directory of the GWT module
+     */
+    private static String baseUrl = null;
+    /**
+     * The state of each module that has been requested, keyed by module path (e.g. "ace/mode/xml"). Each entry holds
+     * whether the module has loaded, and the callbacks waiting for it.
+     */
+    private static JavaScriptObject modules = JavaScriptObject.createObject();
+    /**
+     * true once the ACE module loader has been pointed at the base URL
+     */
+    private static boolean configured = false;
+
+    private AceModuleLoader() {
+
+    }
+
+    /**
+     * @return The URL the mode and theme scripts are loaded from
+     */
+    public static String getBaseUrl() {
+        return baseUrl == null ? GWT.getModuleBaseURL() + "ace/" : baseUrl;
+    }
+
+    /**
+     * @param baseUrl The URL of the directory holding the ace.js, mode-*.js and theme-*.js scripts
+     */
+    public static void setBaseUrl(final String baseUrl) {
+        AceModuleLoader.baseUrl = baseUrl == null || baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        configured = false;
+    }
+
+    /**
+     * Start loading modes before they are needed, so editors can apply them straight away.
+     *
+     * @param modes The modes to load
+     */
+    public static void preload(final AceEditorMode... modes) {
+        for (final AceEditorMode mode : modes) {
+            loadNative("mode", mode.getName(), null);
+        }
+    }
+
+    /**
+     * Start loading themes before they are needed, so editors can apply them straight away.
+     *
+     * @param themes The themes to load
+     */
+    public static void preload(final AceEditorTheme... themes) {
+        for (final AceEditorTheme theme : themes) {
+            loadNative("theme", theme.getName(), null);
+        }
+    }
+
+    /**
+     * @return true if the script for the mode has been loaded
+     */
+    public static boolean isLoaded(final AceEditorMode mode) {
+        return isLoadedNative("ace/mode/" + mode.getName());
+    }
+
+    /**
+     * @return true if the script for the theme has been loaded
+     */
+    public static boolean isLoaded(final AceEditorTheme theme) {
+        return isLoadedNative("ace/theme/" + theme.getName());
+    }
+
+    static native boolean isLoadedNative(final String path) /*-{
+        var modules = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::modules;
+        if (modules[path] != null) {
+            return modules[path].loaded;
+        }
+
+        // The script may have been included in the main HTML file
+        try {
+            return $wnd.ace != undefined && !!$wnd.ace.require(path);
+        } catch (e) {
+            return false;
+        }
+    }-*/;
+
+    /**
+     * Point the ACE module loader at the base URL, so the modules ACE loads itself (workers, snippets, extensions)
+     * come from the same place. The paths the host page gave ACE itself are only replaced when
+     * {@link #setBaseUrl(String)} has been called.
+     */
+    private static native void configureNative() /*-{
+        if (@edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::configured) {
+            return;
+        }
+
+        var baseUrl = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::getBaseUrl()();
+        var config = $wnd.ace.require("ace/config");
+        if (@edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::baseUrl != null || !config.get("basePath")) {
+            config.set("basePath", baseUrl);
+            config.set("modePath", baseUrl);
+            config.set("themePath", baseUrl);
+            config.set("workerPath", baseUrl);
+        }
+
+        // Modes and themes that ACE loads itself should also come from the bundles
+        var manifest = $wnd.AceGWTAssetManifest;
+        if (manifest != null) {
+            for (var module in manifest.modules) {
+                if (module.indexOf("ace/") == 0) {
+                    config.setModuleUrl(module, manifest.baseUrl + manifest.modules[module]);
+                }
+            }
+        }
+
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::configured = true;
+    }-*/;
+
+    /**
+     * @return The URL of the content hashed bundle of a mode or theme if it is listed in the asset manifest, or the URL of
+     *         the script in the base URL otherwise
+     */
+    private static native String getUrlNative(final String type, final String name) /*-{
+        var manifest = $wnd.AceGWTAssetManifest;
+        var path = "ace/" + type + "/" + name;
+        if (manifest != null && manifest.modules.hasOwnProperty(path)) {
+            return manifest.baseUrl + manifest.modules[path];
+        }
+
+        return @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::getBaseUrl()() + type + "-" + name + ".js";
+    }-*/;
+
+    /**
+     * @return The URLs of the content hashed spelling dictionaries listed in the asset manifest, keyed by file name (e.g.
+     *         en_US.dic). Empty if the host page does not include the manifest.
+     */
+    static native JavaScriptObject getDictionaryUrlsNative() /*-{
+        var manifest = $wnd.AceGWTAssetManifest;
+        var urls = {};
+        if (manifest != null) {
+            for (var module in manifest.modules) {
+                if (module.indexOf("typojs/") == 0) {
+                    urls[module.substring("typojs/".length)] = manifest.baseUrl + manifest.modules[module];
+                }
+            }
+        }
+        return urls;
+    }-*/;
+
+    /**
+     * Load a mode or theme script, if it has not already been loaded.
+     *
+     * @param type Either "mode" or "theme"
+     * @param name The short name of the mode or theme (e.g. "xml")
+     * @param callback An optional function that is passed true once the module is available, or false if it could not be loaded
+     */
+    static native void loadNative(final String type, final String name, final JavaScriptObject callback) /*-{
+        if ($wnd.ace == undefined) {
+            console.log("window.ace is undefined. The " + type + " " + name + " could not be loaded.");
+            if (callback) {
+                callback(false);
+            }
+            return;
+        }
+
+        @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::configureNative()();
+
+        var modules = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::modules;
+        var path = "ace/" + type + "/" + name;
+        var entry = modules[path];
+
+        if (entry == null) {
+            entry = {loaded: false, callbacks: []};
+            modules[path] = entry;
+
+            if (@edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::isLoadedNative(Ljava/lang/String;)(path)) {
+                // The script was included in the main HTML file
+                entry.loaded = true;
+            } else {
+                var url = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::getUrlNative(Ljava/lang/String;Ljava/lang/String;)(type, name);
+
+                var complete = function(success) {
+                    var callbacks = entry.callbacks;
+                    entry.callbacks = [];
+                    entry.loaded = success;
+
+                    if (!success) {
+                        console.error("The " + type + " " + name + " could not be loaded from " + url);
+                        // Forget the failure so the script can be requested again
+                        delete modules[path];
+                    }
+
+                    for (var i = 0, callbacksLength = callbacks.length; i < callbacksLength; ++i) {
+                        callbacks[i](success);
+                    }
+                };
+
+                var script = $doc.createElement("script");
+                script.src = url;
+                script.charset = "utf-8";
+                script.onload = function() {
+                    complete(true);
+                };
+                script.onerror = function() {
+                    complete(false);
+                };
+                $doc.getElementsByTagName("head")[0].appendChild(script);
+            }
+        }
+
+        if (callback) {
+            if (entry.loaded) {
+                callback(true);
+            } else {
+                entry.callbacks.push(callback);
+            }
+        }
+    }-*/;
+}
@@ -0,0 +1,316 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.ui.Composite;
+import com.google.gwt.user.client.ui.HTML;
+
+/**
+ * A lightweight, read only widget that displays text highlighted with an ACE mode and theme.
+ *
+ * Unlike the {@link AceEditor}, no ACE editor, EditSession, web workers, context menu or command handlers are created.
+ * The text is tokenized once into static markup, and the tokenizers are shared by every viewer using the same mode. This
+ * makes the viewer suitable for pages that display dozens of read only documents, like history or comparison views.
+ *
+ * Viewers are rendered in batches, a few milliseconds at a time, so a page that attaches many viewers at once remains
+ * responsive while they are rendered.
+ *
+ * Requirements:
+ * * ace.js. The mode-*.js and theme-*.js files are loaded on demand by the {@link AceModuleLoader}, and the viewer is
+ *   rendered once they are available.
+ * * styles for any marker classes passed to {@link #addMarker(int, int, int, String)}
+ */
+public class AceViewer extends Composite {
+    /**
+     * The number of milliseconds a batch of rendering may take before control is returned to the browser
+     */
+    private static final double RENDER_BATCH_MILLIS = 10;
+    /**
+     * The styles used by the viewer markup. The colours are supplied by the theme.
+     */
+    private static final String VIEWER_CSS = ".ace_viewer {font-family: 'Monaco', 'Menlo', 'Ubuntu Mono', 'Consolas', 'source-code-pro', monospace;"
+            + "font-size: 12px; white-space: pre; overflow: auto;}"
+            + ".ace_viewer .ace_line {min-height: 1em;}"
+            + ".ace_viewer .ace_gutter {display: inline-block; min-width: 3em; margin-right: 6px; padding-right: 3px; text-align: right;"
+            + "-moz-user-select: none; -webkit-user-select: none; user-select: none;}";
+    /**
+     * The viewers waiting to be rendered. This is shared by all viewers so they can be rendered in batches.
+     */
+    private static final List<AceViewer> renderQueue = new ArrayList<AceViewer>();
+    /**
+     * The ACE tokenizers, keyed by mode path, shared by all viewers
+     */
+    private static JavaScriptObject tokenizers = JavaScriptObject.createObject();
+
+    private String text = "";
+    private AceEditorMode mode = null;
+    private AceEditorTheme theme = null;
+    private boolean showGutter = true;
+    private int firstLineNumber = 1;
+    /**
+     * The precomputed markers to display, as {row, start, end, className} objects
+     */
+    private JavaScriptObject markers = JavaScriptObject.createArray();
+
+    public AceViewer() {
+        initWidget(new HTML());
+    }
+
+    public AceViewer(final String text, final AceEditorMode mode, final AceEditorTheme theme) {
+        this();
+        this.text = text == null ? "" : text;
+        this.mode = mode;
+        this.theme = theme;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(final String text) {
+        this.text = text == null ? "" : text;
+        scheduleRender();
+    }
+
+    public AceEditorMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Set the mode.
+     *
+     * @param mode the mode (one of the values in the {@link AceEditorMode} enumeration)
+     */
+    public void setMode(final AceEditorMode mode) {
+        this.mode = mode;
+        scheduleRender();
+    }
+
+    public AceEditorTheme getTheme() {
+        return theme;
+    }
+
+    /**
+     * Set the theme.
+     *
+     * @param theme the theme (one of the values in the {@link AceEditorTheme} enumeration)
+     */
+    public void setTheme(final AceEditorTheme theme) {
+        this.theme = theme;
+        scheduleRender();
+    }
+
+    public boolean getShowGutter() {
+        return showGutter;
+    }
+
+    /**
+     * Set whether or not line numbers are shown.
+     *
+     * @param showGutter true if line numbers should be shown, false otherwise
+     */
+    public void setShowGutter(final boolean showGutter) {
+        this.showGutter = showGutter;
+        scheduleRender();
+    }
+
+    public int getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    /**
+     * @param firstLineNumber The number displayed next to the first line, which is useful when displaying an extract of a document
+     */
+    public void setFirstLineNumber(final int firstLineNumber) {
+        this.firstLineNumber = firstLineNumber;
+        scheduleRender();
+    }
+
+    /**
+     * Add a precomputed marker. The text between the start and end columns is wrapped in an element with the given class.
+     *
+     * @param row The zero based row of the marker
+     * @param startColumn The column the marker starts at
+     * @param endColumn The column the marker ends at (exclusive)
+     * @param className The CSS class to apply to the marked text
+     */
+    public void addMarker(final int row, final int startColumn, final int endColumn, final String className) {
+        addMarkerNative(row, startColumn, endColumn, className);
+        scheduleRender();
+    }
+
+    /**
+     * Remove all the markers added with {@link #addMarker(int, int, int, String)}.
+     */
+    public void clearMarkers() {
+        markers = JavaScriptObject.createArray();
+        scheduleRender();
+    }
+
+    private native void addMarkerNative(final int row, final int startColumn, final int endColumn, final String className) /*-{
+        var markers = this.@edu.ycp.cs.dh.acegwt.client.ace.AceViewer::markers;
+        markers.push({row: row, start: startColumn, end: endColumn, className: className});
+    }-*/;
+
+    /** Called after the widget is added to the DOM. Queue the markup to be rendered. */
+    @Override
+    protected void onLoad() {
+        super.onLoad();
+        scheduleRender();
+    }
+
+    /** Called before the widget is removed from the DOM. There is no need to render a viewer that is not displayed. */
+    @Override
+    protected void onUnload() {
+        renderQueue.remove(this);
+        super.onUnload();
+    }
+
+    /**
+     * Queue this viewer to be rendered. The queue is processed incrementally, rendering as many viewers as fit in
+     * {@link #RENDER_BATCH_MILLIS} before returning control to the browser.
+     */
+    private void scheduleRender() {
+        if (!isAttached() || renderQueue.contains(this)) {
+            return;
+        }
+
+        renderQueue.add(this);
+
+        if (renderQueue.size() == 1) {
+            Scheduler.get().scheduleIncremental(new Scheduler.RepeatingCommand() {
+                @Override
+                public boolean execute() {
+                    final double start = Duration.currentTimeMillis();
+                    while (!renderQueue.isEmpty() && Duration.currentTimeMillis() - start < RENDER_BATCH_MILLIS) {
+                        renderQueue.remove(0).render();
+                    }
+                    return !renderQueue.isEmpty();
+                }
+            });
+        }
+    }
+
+    private void render() {
+        renderNative(getElement(), text, mode == null ? "text" : mode.getName(), theme == null ? "textmate" : theme.getName(),
+                showGutter, firstLineNumber, markers);
+    }
+
+    private native void renderNative(final Element element, final String text, final String modeName, final String themeName,
+            final boolean showGutter, final int firstLineNumber, final JavaScriptObject markers) /*-{
+        if ($wnd.ace == undefined) {
+            console.log("window.ace is undefined! Please make sure you have included the appropriate JavaScript files.");
+            return;
+        }
+
+        var dom = $wnd.ace.require("ace/lib/dom");
+        var modePath = "ace/mode/" + modeName;
+        var themePath = "ace/theme/" + themeName;
+        var modeLoaded = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::isLoadedNative(Ljava/lang/String;)(modePath);
+        var themeLoaded = @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::isLoadedNative(Ljava/lang/String;)(themePath);
+
+        if (!modeLoaded || !themeLoaded) {
+            // Render again once the missing script has been loaded. If it can't be loaded, the text is rendered with the
+            // text mode or textmate theme that ACE includes, rather than leaving the viewer blank.
+            @edu.ycp.cs.dh.acegwt.client.ace.AceModuleLoader::loadNative(Ljava/lang/String;Ljava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(
+                modeLoaded ? "theme" : "mode", modeLoaded ? themeName : modeName, function(me) {
+                    return function(success) {
+                        if (success) {
+                            me.@edu.ycp.cs.dh.acegwt.client.ace.AceViewer::scheduleRender()();
+                        } else if (modeLoaded ? themeName != "textmate" : modeName != "text") {
+                            me.@edu.ycp.cs.dh.acegwt.client.ace.AceViewer::renderNative(Lcom/google/gwt/dom/client/Element;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;ZILcom/google/gwt/core/client/JavaScriptObject;)(
+                                element, text, modeLoaded ? modeName : "text", modeLoaded ? "textmate" : themeName,
+                                showGutter, firstLineNumber, markers);
+                        }
+                    };
+                }(this));
+            return;
+        }
+
+        var modeModule = $wnd.ace.require(modePath);
+        var themeModule = $wnd.ace.require(themePath);
+
+        var tokenizers = @edu.ycp.cs.dh.acegwt.client.ace.AceViewer::tokenizers;
+        var tokenizer = tokenizers[modePath];
+        if (tokenizer == null) {
+            tokenizer = new modeModule.Mode().getTokenizer();
+            tokenizers[modePath] = tokenizer;
+        }
+
+        dom.importCssString(themeModule.cssText, themeModule.cssClass);
+        dom.importCssString(@edu.ycp.cs.dh.acegwt.client.ace.AceViewer::VIEWER_CSS, "ace_viewer");
+
+        var escape = function(value) {
+            return value.replace(/&/g, "&amp;").replace(/</g, "&lt;");
+        };
+        // The marker classes come from the caller, so they must not be able to close the attribute
+        var escapeAttribute = function(value) {
+            return escape(value).replace(/'/g, "&#39;").replace(/"/g, "&quot;");
+        };
+
+        var markersByRow = {};
+        for (var i = 0, markersLength = markers.length; i < markersLength; ++i) {
+            var marker = markers[i];
+            if (!markersByRow[marker.row]) {
+                markersByRow[marker.row] = [];
+            }
+            markersByRow[marker.row].push(marker);
+        }
+
+        var lines = text.split(/\r\n|\r|\n/);
+        var state = "start";
+        var html = ["<div class='ace_viewer " + themeModule.cssClass + "'>"];
+
+        for (var row = 0, linesLength = lines.length; row < linesLength; ++row) {
+            var lineTokens = tokenizer.getLineTokens(lines[row], state);
+            var tokens = lineTokens.tokens;
+            var rowMarkers = markersByRow[row] || [];
+            var column = 0;
+
+            state = lineTokens.state;
+
+            html.push("<div class='ace_line'>");
+            if (showGutter) {
+                html.push("<span class='ace_gutter'>" + (row + firstLineNumber) + "</span>");
+            }
+
+            for (var tokenIndex = 0, tokensLength = tokens.length; tokenIndex < tokensLength; ++tokenIndex) {
+                var token = tokens[tokenIndex];
+                var classes = "ace_" + token.type.replace(/\./g, " ace_");
+                var tokenEnd = column + token.value.length;
+                var position = column;
+
+                // Split the token wherever a marker starts or ends, so the marker classes can be applied to the pieces
+                while (position < tokenEnd) {
+                    var next = tokenEnd;
+                    var markerClasses = "";
+
+                    for (var markerIndex = 0, rowMarkersLength = rowMarkers.length; markerIndex < rowMarkersLength; ++markerIndex) {
+                        var rowMarker = rowMarkers[markerIndex];
+                        if (rowMarker.start <= position && rowMarker.end > position) {
+                            markerClasses += " " + rowMarker.className;
+                            next = Math.min(next, rowMarker.end);
+                        } else if (rowMarker.start > position) {
+                            next = Math.min(next, rowMarker.start);
+                        }
+                    }
+
+                    html.push("<span class='" + escapeAttribute(classes + markerClasses) + "'>" + escape(token.value.substring(position - column, next - column)) + "</span>");
+                    position = next;
+                }
+
+                column = tokenEnd;
+            }
+
+            html.push("</div>");
+        }
+
+        html.push("</div>");
+        element.innerHTML = html.join("");
+    }-*/;
+}
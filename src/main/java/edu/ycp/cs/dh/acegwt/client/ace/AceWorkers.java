@@ -0,0 +1,275 @@
+package edu.ycp.cs.dh.acegwt.client.ace;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.resources.client.ClientBundle;
+import com.google.gwt.resources.client.TextResource;
+
+/**
+ * Creates the web workers used by the analysis features of the editor.
+ *
+ * The spell checking worker (checkspelling.js and typo.js) is compiled into the GWT module, and started from a Blob URL,
+ * so no request is made when an editor starts spell checking, and it works no matter where the host page is served from.
+ * The tag matching, spec matching and conditional checking workers are supplied by the host application, and by default
+ * are loaded from the same relative URLs as before. Their source can be registered with
+ * {@link #setWorkerSource(AceEditorFeature, String)} (for example from the host's own ClientBundle) to start them from a
+ * Blob URL too.
+ *
+ * The module also has a conditional checking worker of its own (conditional.js), which is only sent the rows that
+ * changed. Its exclusion rules may differ from the host's worker, so it is only used once
+ * {@link #setBuiltInConditionalChecking(boolean)} turns it on.
+ *
+ * An editor runs spell checking in a fused analysis worker, which keeps one copy of the document for all the analysis
+ * passes, unless {@link #setFusedAnalysis(boolean)} turns this off, or the spelling worker has been given a URL override
+ * or a source of its own. Conditional checking shares the fused analysis worker when the built-in conditional checking
+ * worker is used.
+ *
+ * {@link #setWorkerUrl(AceEditorFeature, String)} overrides the URL a worker is loaded from. A worker with a URL override
+ * is always loaded from that URL, which is also used when the browser can not create workers from Blob URLs (for example
+ * because of a Content Security Policy). Editors fall back to sending the whole document to conditional checking workers
+ * that don't support updates.
+ */
+public final class AceWorkers {
+
+    /**
+     * The worker scripts that are compiled into the module
+     */
+    interface Resources extends ClientBundle {
+        @Source("edu/ycp/cs/dh/acegwt/public/typojs/typo.js")
+        TextResource typo();
+
+        @Source("edu/ycp/cs/dh/acegwt/public/typojs/checkspelling.js")
+        TextResource checkSpelling();
+
+        @Source("edu/ycp/cs/dh/acegwt/public/highlighters/conditional.js")
+        TextResource conditional();
+
+        @Source("edu/ycp/cs/dh/acegwt/public/analysis/analysis.js")
+        TextResource analysis();
+    }
+
+    private static final Map<AceEditorFeature, String> DEFAULT_URLS = new HashMap<AceEditorFeature, String>();
+
+    static {
+        DEFAULT_URLS.put(AceEditorFeature.SPELL_CHECKING, "javascript/typojs/checkspelling.js");
+        DEFAULT_URLS.put(AceEditorFeature.TAG_MATCHING, "javascript/tagdb/tagdb.js");
+        DEFAULT_URLS.put(AceEditorFeature.SPEC_MATCHING, "javascript/tagdb/contentSpecTagDB.js");
+        DEFAULT_URLS.put(AceEditorFeature.CONDITIONAL_CHECKING, "javascript/highlighters/conditional.js");
+    }
+
+    private static final Map<AceEditorFeature, String> urls = new HashMap<AceEditorFeature, String>();
+    private static final Map<AceEditorFeature, String> sources = new HashMap<AceEditorFeature, String>();
+    /**
+     * The Blob URLs created for the inline workers. They are shared by all editors, and never revoked.
+     */
+    private static final Map<AceEditorFeature, String> blobUrls = new HashMap<AceEditorFeature, String>();
+    private static boolean builtInSourcesRegistered = false;
+    private static String builtInSpellCheckingSource;
+    private static String builtInConditionalSource;
+    private static String analysisSource;
+    private static String analysisBlobUrl;
+    private static boolean fusedAnalysis = true;
+    private static boolean builtInConditionalChecking = false;
+
+    private AceWorkers() {
+
+    }
+
+    /**
+     * Load a worker from a URL rather than from its inline source.
+     *
+     * @param feature The feature the worker belongs to
+     * @param url The URL of the worker script, or null to remove the override
+     */
+    public static void setWorkerUrl(final AceEditorFeature feature, final String url) {
+        if (url == null) {
+            urls.remove(feature);
+        } else {
+            urls.put(feature, url);
+        }
+    }
+
+    /**
+     * @return The URL the worker is loaded from when it is not started from its inline source
+     */
+    public static String getWorkerUrl(final AceEditorFeature feature) {
+        return urls.containsKey(feature) ? urls.get(feature) : DEFAULT_URLS.get(feature);
+    }
+
+    /**
+     * Register the source of a worker, so it is started from a Blob URL.
+     *
+     * @param feature The feature the worker belongs to
+     * @param source The JavaScript source of the worker, or null to load the worker from its URL
+     */
+    public static void setWorkerSource(final AceEditorFeature feature, final String source) {
+        registerBuiltInSources();
+        blobUrls.remove(feature);
+        if (source == null) {
+            sources.remove(feature);
+        } else {
+            sources.put(feature, source);
+        }
+    }
+
+    /**
+     * @param fused false to give spell checking and conditional checking a worker each. This affects editors created
+     *              afterwards.
+     */
+    public static void setFusedAnalysis(final boolean fused) {
+        fusedAnalysis = fused;
+    }
+
+    public static boolean isFusedAnalysis() {
+        return fusedAnalysis;
+    }
+
+    /**
+     * @param builtIn true to start the conditional checking worker from the module's own conditional.js rather than from
+     *                its URL. This affects editors created afterwards. A URL override set for the worker still takes
+     *                precedence.
+     */
+    public static void setBuiltInConditionalChecking(final boolean builtIn) {
+        registerBuiltInSources();
+        builtInConditionalChecking = builtIn;
+
+        if (builtIn) {
+            setWorkerSource(AceEditorFeature.CONDITIONAL_CHECKING, builtInConditionalSource);
+        } else if (sources.get(AceEditorFeature.CONDITIONAL_CHECKING) == builtInConditionalSource) {
+            // Leave a source registered by the host application in place
+            setWorkerSource(AceEditorFeature.CONDITIONAL_CHECKING, null);
+        }
+    }
+
+    public static boolean isBuiltInConditionalChecking() {
+        return builtInConditionalChecking;
+    }
+
+    /**
+     * @return true if conditional checking runs in the fused analysis worker, which is only the case when the built-in
+     *         conditional checking worker is used
+     */
+    static boolean isConditionalCheckingFused() {
+        registerBuiltInSources();
+
+        return fusedAnalysis && !urls.containsKey(AceEditorFeature.CONDITIONAL_CHECKING)
+                && sources.get(AceEditorFeature.CONDITIONAL_CHECKING) == builtInConditionalSource;
+    }
+
+    /**
+     * Create the fused analysis worker, which runs spell checking, and conditional checking when
+     * {@link #isConditionalCheckingFused()} is true.
+     *
+     * @return The web worker, or null if the features should have a worker each
+     */
+    static JavaScriptObject createAnalysisWorker() {
+        registerBuiltInSources();
+
+        if (!fusedAnalysis || urls.containsKey(AceEditorFeature.SPELL_CHECKING)
+                || sources.get(AceEditorFeature.SPELL_CHECKING) != builtInSpellCheckingSource) {
+            return null;
+        }
+
+        if (analysisBlobUrl == null) {
+            analysisBlobUrl = createBlobUrlNative(analysisSource);
+            if (analysisBlobUrl == null) {
+                fusedAnalysis = false;
+                return null;
+            }
+        }
+
+        final JavaScriptObject worker = createWorkerNative(analysisBlobUrl);
+        if (worker == null) {
+            // Blob URLs are not allowed, so the features are loaded from their URLs
+            fusedAnalysis = false;
+        }
+        return worker;
+    }
+
+    /**
+     * Create a worker for a feature.
+     *
+     * @param feature The feature the worker belongs to
+     * @return The web worker
+     */
+    static JavaScriptObject createWorker(final AceEditorFeature feature) {
+        registerBuiltInSources();
+
+        if (!urls.containsKey(feature) && sources.containsKey(feature)) {
+            if (!blobUrls.containsKey(feature)) {
+                final String blobUrl = createBlobUrlNative(sources.get(feature));
+                if (blobUrl != null) {
+                    blobUrls.put(feature, blobUrl);
+                }
+            }
+
+            if (blobUrls.containsKey(feature)) {
+                final JavaScriptObject worker = createWorkerNative(blobUrls.get(feature));
+                if (worker != null) {
+                    return worker;
+                }
+
+                // Blob URLs are not allowed, so stop trying them
+                blobUrls.remove(feature);
+                sources.remove(feature);
+            }
+        }
+
+        return createWorkerNative(getWorkerUrl(feature));
+    }
+
+    private static void registerBuiltInSources() {
+        if (builtInSourcesRegistered) {
+            return;
+        }
+
+        // checkspelling.js only imports typo.js if Typo is not already defined
+        final Resources resources = GWT.create(Resources.class);
+        builtInSpellCheckingSource = resources.typo().getText() + "\n" + resources.checkSpelling().getText();
+        builtInConditionalSource = resources.conditional().getText();
+        sources.put(AceEditorFeature.SPELL_CHECKING, builtInSpellCheckingSource);
+
+        // checkspelling.js and conditional.js leave the messages to analysis.js when fusedAnalysisWorker is defined
+        analysisSource = "var fusedAnalysisWorker = true;\n" + builtInSpellCheckingSource + "\n" + builtInConditionalSource
+                + "\n" + resources.analysis().getText();
+        builtInSourcesRegistered = true;
+    }
+
+    /**
+     * Resolve a URL against the host page, so it can be used from a worker started from a Blob URL.
+     *
+     * @param url The absolute or relative URL
+     * @return The absolute URL
+     */
+    static native String toAbsoluteUrl(final String url) /*-{
+        if (url == null) {
+            return null;
+        }
+
+        var a = $doc.createElement("a");
+        a.href = url;
+        return a.href;
+    }-*/;
+
+    private static native String createBlobUrlNative(final String source) /*-{
+        try {
+            var URL = $wnd.URL || $wnd.webkitURL;
+            return URL.createObjectURL(new $wnd.Blob([source], {type: "application/javascript"}));
+        } catch (e) {
+            console.log("Blob URLs could not be created. Workers will be loaded from their URLs. " + e);
+            return null;
+        }
+    }-*/;
+
+    private static native JavaScriptObject createWorkerNative(final String url) /*-{
+        try {
+            return new $wnd.Worker(url);
+        } catch (e) {
+            console.error("The worker " + url + " could not be created. " + e);
+            return null;
+        }
+    }-*/;
+}
@@ -26,6 +26,32 @@ public class TypoJS {
         return dictionary != null;
     }
 
+    /**
+     * Add a word to the loaded dictionary, without reloading it.
+     */
+    public native void addWord(final String word) /*-{
+        var dictionary = this.@edu.ycp.cs.dh.acegwt.client.typo.TypoJS::dictionary;
+        if (dictionary == null) {
+            console.log("dictionary == null. addWord() was not called successfully.");
+            return;
+        }
+
+        dictionary.addWord(word);
+    }-*/;
+
+    /**
+     * Remove a word that was added with {@link #addWord(String)}.
+     */
+    public native void removeWord(final String word) /*-{
+        var dictionary = this.@edu.ycp.cs.dh.acegwt.client.typo.TypoJS::dictionary;
+        if (dictionary == null) {
+            console.log("dictionary == null. removeWord() was not called successfully.");
+            return;
+        }
+
+        dictionary.removeWord(word);
+    }-*/;
+
     public TypoJS() {
         loadDictionary(DEFAULT_DIC, DEFAULT_AFF, DEFAULT_LANG);
     }
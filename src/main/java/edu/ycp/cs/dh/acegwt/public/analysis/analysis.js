@@ -0,0 +1,186 @@
+// The fused analysis worker runs spell checking and conditional checking for an editor in one worker. It is built
+// from typo.js, checkspelling.js, conditional.js and this script, which only register their own message listeners
+// when fusedAnalysisWorker is not defined.
+//
+// The worker keeps one copy of the document, updated with the rows that changed. The tags in each changed line are
+// found once, and both the conditional checking model and the spell checking scan are built from them. Spell checking
+// keeps the lexical state each line starts in, and only scans the lines from the first changed line until the state
+// matches what it was before. The spell checking results of the lines whose text and checked segments have not changed
+// are reused.
+//
+// Messages:
+//  {action: "document", lines: [string]} replaces the document.
+//  {action: "update", start: row, oldEnd: row, lines: [string]} replaces the rows from start to oldEnd (inclusive, in
+//      the rows of the previous version of the document) with the lines.
+//  {action: "analyse", requests: [{action: "spellcheck", lang: string} | {action: "recheck", rows: [row],
+//      lang: string} | {action: "conditions", condition: string}]} runs the passes over the document, and replies with
+//      {action: "analysis", results: [...]}, holding the message each pass would have replied with on its own. The
+//      packed spelling results are transferred with the batch.
+// Every other message is handled as it would be by checkspelling.js or conditional.js.
+
+var documentLines = [];
+// The tags that open and close on each line, shared by the conditional checking model and the spell checking scan
+var documentTags = [];
+
+// The spell checking results of each line, with the language segments they were found for. They are dropped when the
+// line changes, or when a word it contains is added to or removed from the custom dictionary.
+var lineSpelling = [];
+
+// The lexical state each line starts and ends in, with its checked segments, for the language in scannedLanguage. They
+// are dropped when the line changes.
+var lineScans = [];
+var scannedLanguage = null;
+
+function replaceAnalysisDocument(lines) {
+    documentLines = lines;
+    documentTags = parseLines(lines);
+    lineSpelling = new Array(lines.length);
+    lineScans = new Array(lines.length);
+    replaceDocument(documentTags);
+}
+
+function updateAnalysisDocument(start, oldEnd, lines) {
+    var oldCount = oldEnd - start + 1;
+    var lineTags = parseLines(lines);
+    Array.prototype.splice.apply(documentLines, [start, oldCount].concat(lines));
+    Array.prototype.splice.apply(documentTags, [start, oldCount].concat(lineTags));
+    Array.prototype.splice.apply(lineSpelling, [start, oldCount].concat(new Array(lines.length)));
+    Array.prototype.splice.apply(lineScans, [start, oldCount].concat(new Array(lines.length)));
+    updateRows(start, oldEnd, lineTags);
+}
+
+// Returns the checked segments of each line. Lines that have not changed, and start in the same lexical state as
+// before, are not scanned again.
+function scanDocument(lang) {
+    if (lang != scannedLanguage) {
+        scannedLanguage = lang;
+        lineScans = new Array(documentLines.length);
+    }
+
+    var state = INITIAL_LEXICAL_STATE;
+    var segments = [];
+    for (var lineIndex = 0, linesLength = documentLines.length; lineIndex < linesLength; ++lineIndex) {
+        var scan = lineScans[lineIndex];
+        if (scan == null || !sameLexicalState(scan.start, state)) {
+            var scanned = scanLine(documentLines[lineIndex], state, lang, documentTags[lineIndex]);
+            scan = {start: state, segments: scanned.segments, end: scanned.state};
+            lineScans[lineIndex] = scan;
+        }
+        segments.push(scan.segments);
+        state = scan.end;
+    }
+    return segments;
+}
+
+// Returns the spelling results of a line, reusing them if its text and checked segments have not changed
+function spellCheckLine(lineIndex) {
+    var segmentsKey = lastLineSegments[lineIndex].join(";");
+    var cached = lineSpelling[lineIndex];
+    if (cached == null || cached.segmentsKey != segmentsKey) {
+        cached = {
+            segmentsKey: segmentsKey,
+            lineData: checkSegmentedLines([documentLines[lineIndex]], [lastLineSegments[lineIndex]])[0]
+        };
+        lineSpelling[lineIndex] = cached;
+    }
+    return cached.lineData;
+}
+
+// Spell check the document, reusing the results of the lines whose text and checked segments have not changed
+function spellCheckDocument(lang) {
+    checkStartedAt = languageClock + 1;
+    lastLineSegments = scanDocument(lang || defaultLanguage);
+
+    var lineData = [];
+    for (var lineIndex = 0, linesLength = documentLines.length; lineIndex < linesLength; ++lineIndex) {
+        lineData.push(spellCheckLine(lineIndex));
+    }
+
+    return {action: "spellcheck", results: packResults(lineData, null), memo: takeMemoStatistics()};
+}
+
+// Check the rows containing a word that was added to or removed from the custom dictionary again. The editor brings
+// the document up to date first, so the rows and their segments match its text.
+function recheckRows(rows, lang) {
+    checkStartedAt = languageClock + 1;
+    lastLineSegments = scanDocument(lang || defaultLanguage);
+
+    var lineData = [];
+    for (var i = 0, rowsLength = rows.length; i < rowsLength; ++i) {
+        lineData.push(rows[i] < documentLines.length ? spellCheckLine(rows[i]) :
+            {misspelled: [], badWords: [], badPhrases: []});
+    }
+
+    return {action: "recheck", rows: rows, results: packResults(lineData, rows), memo: takeMemoStatistics()};
+}
+
+// Drop the spelling results of the lines containing any capitalization of the words, as the editor does when it picks
+// the rows to check again
+function forgetWordSpelling(words) {
+    var lowercaseWords = [];
+    for (var i = 0, wordsLength = words.length; i < wordsLength; ++i) {
+        lowercaseWords.push(words[i].toLowerCase());
+    }
+
+    for (var lineIndex = 0, linesLength = documentLines.length; lineIndex < linesLength; ++lineIndex) {
+        if (lineSpelling[lineIndex] == null) {
+            continue;
+        }
+
+        var lowercaseLine = documentLines[lineIndex].toLowerCase();
+        for (var i = 0, wordsLength = lowercaseWords.length; i < wordsLength; ++i) {
+            if (lowercaseLine.indexOf(lowercaseWords[i]) != -1) {
+                lineSpelling[lineIndex] = null;
+                break;
+            }
+        }
+    }
+}
+
+function analyse(requests) {
+    var results = [];
+    var transfer = [];
+    for (var i = 0, requestsLength = requests.length; i < requestsLength; ++i) {
+        var request = requests[i];
+        if (request.action == "spellcheck") {
+            // The dictionaries may not have been initialised yet
+            if (defaultLanguage != null) {
+                var spelling = spellCheckDocument(request.lang);
+                results.push(spelling);
+                transfer.push(spelling.results.buffer);
+            }
+        } else if (request.action == "recheck") {
+            if (defaultLanguage != null) {
+                var rechecked = recheckRows(request.rows, request.lang);
+                results.push(rechecked);
+                transfer.push(rechecked.results.buffer);
+            }
+        } else if (request.action == "conditions") {
+            changeCondition(request.condition);
+            results.push({action: "conditions", condition: request.condition, exclusions: modelExclusions()});
+        }
+    }
+    postMessage({action: "analysis", results: results}, transfer);
+}
+
+self.addEventListener('message', function (e) {
+    var action = e.data.action;
+
+    if (action == "document") {
+        replaceAnalysisDocument(e.data.lines);
+    } else if (action == "update") {
+        updateAnalysisDocument(e.data.start, e.data.oldEnd, e.data.lines);
+    } else if (action == "analyse") {
+        analyse(e.data.requests);
+    } else if (action == "evaluate") {
+        handleConditionalMessage(e.data);
+    } else {
+        if (action == "addWords" || action == "removeWords") {
+            forgetWordSpelling(e.data.words);
+        } else if (action == "init") {
+            // The skipped elements may have changed
+            lineScans = new Array(documentLines.length);
+        }
+        handleSpellingMessage(e.data);
+    }
+});
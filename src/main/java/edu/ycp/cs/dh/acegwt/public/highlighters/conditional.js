@@ -0,0 +1,293 @@
+// Finds the elements whose condition attribute does not match the condition, which are excluded from the build.
+//
+// The worker keeps a model of the document: the tags found in each row, and the elements that are open at the start of
+// each row. An update replaces some rows, and only those rows are parsed again. The elements are then followed from the
+// first replaced row until the open elements match the model again, so an edit only re-evaluates the elements around
+// it. Tags must open and close on one row, but elements can span any number of rows.
+//
+// An element is excluded when none of the values in its condition attribute (separated by spaces, commas or
+// semicolons) match the condition regular expression. Elements inside an excluded element are not reported separately.
+//
+// Messages:
+//  {text: string, condition: string, incremental: true} replaces the whole document.
+//  {action: "update", start: row, oldEnd: row, lines: [string], condition: string} replaces the rows from start to
+//      oldEnd (inclusive, in the rows of the previous version of the document) with the lines.
+//  {action: "evaluate", condition: string} finds the exclusions for another condition, leaving the model and its
+//      condition as they are. Editors use it to fill their condition cache in the background.
+// All reply with {action: "conditions", condition: string, exclusions: [[startRow, startColumn, endRow, endColumn], ...]},
+// where exclusions that touch are merged. Editors that receive an array in reply are talking to an older worker, and keep
+// sending the whole document.
+//
+// The fused analysis worker (analysis.js) includes this script, keeps the document itself, and calls replaceDocument()
+// and updateRows() with the tags it has already parsed.
+
+// Matches a start or end tag, capturing the slash of an end tag, the element name, the attributes and the slash of an
+// empty element
+var ELEMENT_TAG_RE = /<(\/?)([^\s\/>!?]+)([^>]*?)(\/?)>/g;
+var CONDITION_ATTRIBUTE_RE = /\scondition\s*=\s*["']([^"']*)["']/;
+
+// The rows of the document. Each row holds its tags, and the open elements at its start. Rows that are replaced with
+// the same number of rows keep their objects, so the open elements of the rows below still compare equal.
+var rows = [];
+var conditionText = null;
+var condition = null;
+
+// The open elements are an immutable linked list, so the elements open at the start of each row can be kept without
+// copying.
+function openElement(parent, name, conditionValue, row, column, excluded) {
+    return {
+        parent: parent,
+        name: name,
+        condition: conditionValue,
+        row: row,
+        column: column,
+        excluded: excluded
+    };
+}
+
+function sameElements(a, b) {
+    while (a !== b) {
+        if (a == null || b == null || a.name !== b.name || a.condition !== b.condition || a.row !== b.row ||
+            a.column !== b.column || a.excluded !== b.excluded) {
+            return false;
+        }
+        a = a.parent;
+        b = b.parent;
+    }
+    return true;
+}
+
+// Returns the start and end tags in a line. Tags must open and close on the line.
+function parseTags(text) {
+    var tags = [];
+    if (text.indexOf("<") != -1) {
+        ELEMENT_TAG_RE.lastIndex = 0;
+        var match;
+        while ((match = ELEMENT_TAG_RE.exec(text)) != null) {
+            tags.push({
+                start: match.index,
+                end: match.index + match[0].length,
+                name: match[2],
+                close: match[1] == "/",
+                empty: match[4] == "/",
+                attributes: match[3]
+            });
+        }
+    }
+    return tags;
+}
+
+// Returns the value of a tag's condition attribute, or null if it has none
+function conditionOf(tag) {
+    if (tag.condition === undefined) {
+        var conditionMatch = tag.close ? null : CONDITION_ATTRIBUTE_RE.exec(tag.attributes);
+        tag.condition = conditionMatch != null ? conditionMatch[1] : null;
+    }
+    return tag.condition;
+}
+
+function parseRow(row, tags) {
+    row.tags = tags;
+    row.openAtStart = undefined;
+    row.exclusions = [];
+    return row;
+}
+
+function isExcluded(conditionValue) {
+    if (condition == null || conditionValue == null) {
+        return false;
+    }
+
+    var values = conditionValue.split(/[\s,;]+/);
+    for (var i = 0, valuesLength = values.length; i < valuesLength; ++i) {
+        if (values[i] != "" && condition.test(values[i])) {
+            return false;
+        }
+    }
+    return true;
+}
+
+// Follow the elements through a row, adding the exclusions that end in it to rowExclusions. Returns the elements open at
+// its end.
+function walkRow(row, open, rowExclusions) {
+    var tags = row.tags;
+    for (var i = 0, tagsLength = tags.length; i < tagsLength; ++i) {
+        var tag = tags[i];
+        if (tag.close) {
+            // Ignore end tags that don't match, rather than unwinding the whole document
+            if (open != null && open.name == tag.name) {
+                if (open.excluded && (open.parent == null || !open.parent.excluded)) {
+                    rowExclusions.push({start: open.row, column: open.column, end: tag.end});
+                }
+                open = open.parent;
+            }
+        } else {
+            var excluded = (open != null && open.excluded) || isExcluded(conditionOf(tag));
+            if (tag.empty) {
+                if (excluded && (open == null || !open.excluded)) {
+                    rowExclusions.push({start: row, column: tag.start, end: tag.end});
+                }
+            } else {
+                open = openElement(open, tag.name, conditionOf(tag), row, tag.start, excluded);
+            }
+        }
+    }
+
+    return open;
+}
+
+function evaluateRow(row, open) {
+    row.openAtStart = open;
+    row.exclusions = [];
+    return walkRow(row, open, row.exclusions);
+}
+
+// Follow the elements from a row to the end of the document, stopping early once the open elements at the start of a
+// row after lastChangedRow are the same as before.
+function evaluate(fromRow, lastChangedRow) {
+    var open = fromRow == 0 ? null : rows[fromRow - 1].openAtEnd;
+    for (var rowIndex = fromRow, rowsLength = rows.length; rowIndex < rowsLength; ++rowIndex) {
+        var row = rows[rowIndex];
+        if (rowIndex > lastChangedRow && row.openAtStart !== undefined && sameElements(row.openAtStart, open)) {
+            return;
+        }
+        open = row.openAtEnd = evaluateRow(row, open);
+    }
+}
+
+function setCondition(newConditionText) {
+    if (newConditionText === conditionText) {
+        return false;
+    }
+
+    conditionText = newConditionText;
+    try {
+        condition = newConditionText ? new RegExp("^(" + newConditionText + ")$") : null;
+    } catch (ex) {
+        // An invalid condition excludes nothing
+        condition = null;
+    }
+    return true;
+}
+
+// Replace the document with the tags of each of its lines
+function replaceDocument(lineTags) {
+    rows = [];
+    for (var i = 0, linesLength = lineTags.length; i < linesLength; ++i) {
+        rows.push(parseRow({}, lineTags[i]));
+    }
+    evaluate(0, rows.length);
+}
+
+// Replace the rows from start to oldEnd with rows holding the tags of the new lines
+function updateRows(start, oldEnd, lineTags) {
+    var oldCount = oldEnd - start + 1;
+    var replacement = [];
+    for (var i = 0, linesLength = lineTags.length; i < linesLength; ++i) {
+        // Reuse the row objects, so the open elements of the rows below still compare equal
+        replacement.push(parseRow(i < oldCount ? rows[start + i] : {}, lineTags[i]));
+    }
+
+    Array.prototype.splice.apply(rows, [start, oldCount].concat(replacement));
+    evaluate(start, start + lineTags.length - 1);
+}
+
+function parseLines(lines) {
+    var lineTags = [];
+    for (var i = 0, linesLength = lines.length; i < linesLength; ++i) {
+        lineTags.push(parseTags(lines[i]));
+    }
+    return lineTags;
+}
+
+// Apply a new condition, and evaluate every element against it if it has changed. The rows don't have to be parsed
+// again.
+function changeCondition(newConditionText) {
+    if (setCondition(newConditionText)) {
+        evaluate(0, rows.length);
+    }
+}
+
+// Find the exclusions for a condition without changing the model
+function preview(previewConditionText) {
+    var savedConditionText = conditionText;
+    var savedCondition = condition;
+    setCondition(previewConditionText);
+
+    var open = null;
+    var rowExclusions = [];
+    for (var rowIndex = 0, rowsLength = rows.length; rowIndex < rowsLength; ++rowIndex) {
+        rowExclusions.push([]);
+        open = walkRow(rows[rowIndex], open, rowExclusions[rowIndex]);
+    }
+
+    conditionText = savedConditionText;
+    condition = savedCondition;
+    return exclusions(rowExclusions);
+}
+
+function modelExclusions() {
+    var rowExclusions = [];
+    for (var rowIndex = 0, rowsLength = rows.length; rowIndex < rowsLength; ++rowIndex) {
+        rowExclusions.push(rows[rowIndex].exclusions);
+    }
+    return exclusions(rowExclusions);
+}
+
+// Merge the exclusions that end in each row into a list of ranges
+function exclusions(rowExclusionsList) {
+    var retValue = [];
+    var rowNumbers = new Map();
+    for (var rowIndex = 0, rowsLength = rows.length; rowIndex < rowsLength; ++rowIndex) {
+        rowNumbers.set(rows[rowIndex], rowIndex);
+    }
+
+    var last = null;
+    for (var rowIndex = 0, rowsLength = rows.length; rowIndex < rowsLength; ++rowIndex) {
+        var rowExclusions = rowExclusionsList[rowIndex];
+        for (var i = 0, exclusionsLength = rowExclusions.length; i < exclusionsLength; ++i) {
+            var exclusion = rowExclusions[i];
+            var startRow = rowNumbers.get(exclusion.start);
+            if (startRow === undefined) {
+                continue;
+            }
+
+            // Merge exclusions that touch, such as excluded elements next to each other
+            if (last != null && (last[2] > startRow || (last[2] == startRow && last[3] >= exclusion.column))) {
+                last[3] = last[2] == rowIndex ? Math.max(last[3], exclusion.end) : exclusion.end;
+                last[2] = rowIndex;
+            } else {
+                last = [startRow, exclusion.column, rowIndex, exclusion.end];
+                retValue.push(last);
+            }
+        }
+    }
+
+    return retValue;
+}
+
+function handleConditionalMessage(data) {
+    if (data.action == "evaluate") {
+        postMessage({action: "conditions", condition: data.condition, exclusions: preview(data.condition)});
+        return;
+    }
+
+    if (data.action == "update") {
+        var conditionChanged = setCondition(data.condition);
+        updateRows(data.start, data.oldEnd, parseLines(data.lines));
+        if (conditionChanged) {
+            evaluate(0, rows.length);
+        }
+    } else {
+        setCondition(data.condition);
+        replaceDocument(parseLines(data.text.split("\n")));
+    }
+
+    postMessage({action: "conditions", condition: data.condition, exclusions: modelExclusions()});
+}
+
+if (typeof fusedAnalysisWorker === "undefined") {
+    self.addEventListener('message', function (e) {
+        handleConditionalMessage(e.data);
+    });
+}
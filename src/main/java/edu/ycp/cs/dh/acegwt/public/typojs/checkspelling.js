@@ -1,37 +1,281 @@
-importScripts('typo.js');
+// When started from a Blob URL, typo.js is included in the worker source
+if (typeof Typo === "undefined") {
+    importScripts('typo.js');
+}
 
+// The languages that have been loaded, keyed by language code (e.g. en_US). Each holds its three dictionaries, its own
+// memo, an estimate of the memory its dictionaries use and when it was last used. Languages are loaded the first time
+// they are used, and the least recently used languages are dropped when the dictionaries take more than
+// dictionaryBudget bytes.
+var languages = Object.create(null);
+var languageClock = 0;
+// The value of languageClock when the check in progress started. Languages used since then are not evicted.
+var checkStartedAt = 0;
+var DEFAULT_DICTIONARY_BUDGET = 64 * 1024 * 1024;
+var EMPTY_DICTIONARY = "# empty";
+var dictionaryBudget = DEFAULT_DICTIONARY_BUDGET;
+var defaultLanguage = null;
+var baseTypoJsUrl = null;
+// The URLs of the dictionaries that are not loaded from baseTypoJsUrl, keyed by file name (e.g. en_US.dic). The bundles
+// built by the bundle-assets profile name the dictionaries after their content, so they can be cached.
+var dictionaryUrls = Object.create(null);
+
+// The language of the dictionaries below
+var currentLanguage = null;
 var positiveDictionary, negativeDictionary, negativePhraseDictionary;
 
-function init(lang, baseTypoJsUrl) {
-    var affData = loadDictionaryFile(baseTypoJsUrl + lang + ".aff");
-    var wordData = loadDictionaryFile(baseTypoJsUrl + lang + ".dic");
-    positiveDictionary = new Typo(lang, affData, wordData);
+// The words added to the custom dictionary, which are added to every language
+var customWords = Object.create(null);
+
+// The languages of the lines in the last document that was checked, used to pick the dictionary for suggestions
+var lastLineSegments = [];
+
+// The results of checking each word or phrase against the dictionaries of a language. Documents repeat the same few
+// thousand words, so most checks are answered from here. The memo keeps two generations of at most
+// MAX_MEMO_GENERATION entries: a result found in the old generation is moved to the current one, and when the current
+// generation is full the old one is dropped. This evicts the least recently used words, without the cost of
+// maintaining a list.
+var MAX_MEMO_GENERATION = 10000;
+var MEMO_OK = 0, MEMO_BAD_PHRASE = 1, MEMO_BAD_WORD = 2, MEMO_MISSPELLED = 3;
+var memoHits = 0, memoMisses = 0;
+
+// The results of a check are posted as an Int32Array of [row, start, end, kind] entries, which is transferred to the
+// editor rather than copied. These are the kinds.
+var RESULT_MISSPELLED = 0, RESULT_BAD_WORD = 1, RESULT_BAD_PHRASE = 2;
+
+// Forget every memoised result of a language. This must be called whenever its dictionaries change.
+function clearMemo(language) {
+    language.memo = Object.create(null);
+    language.oldMemo = Object.create(null);
+    language.memoSize = 0;
+    language.oldMemoSize = 0;
+}
+
+// Forget the results for every capitalization of a word, as adding or removing the word changes them
+function forgetWord(language, word) {
+    var lowercaseWord = word.toLowerCase();
+    for (var key in language.memo) {
+        if (key.toLowerCase() == lowercaseWord) {
+            delete language.memo[key];
+            --language.memoSize;
+        }
+    }
+    for (var key in language.oldMemo) {
+        if (key.toLowerCase() == lowercaseWord) {
+            delete language.oldMemo[key];
+            --language.oldMemoSize;
+        }
+    }
+}
+
+// Add words to, or remove them from, the custom dictionary of every language. The dictionaries are not reloaded.
+function updateCustomWords(words, add) {
+    for (var i = 0, wordsLength = words.length; i < wordsLength; ++i) {
+        if (add) {
+            customWords[words[i]] = true;
+        } else {
+            delete customWords[words[i]];
+        }
+
+        for (var lang in languages) {
+            var language = languages[lang];
+            if (language.positive != null) {
+                if (add) {
+                    language.positive.addWord(words[i]);
+                } else {
+                    language.positive.removeWord(words[i]);
+                }
+                forgetWord(language, words[i]);
+            }
+        }
+    }
+}
+
+// Returns how a trimmed word or phrase is classified by the dictionaries of the current language. Phrases (which
+// contain a space) are only checked against the negative dictionaries, and are not memoised as few of them are ever
+// checked twice.
+function classify(word) {
+    if (word.indexOf(" ") != -1) {
+        if (negativePhraseDictionary.check(word)) {
+            return MEMO_BAD_PHRASE;
+        }
+        return negativeDictionary.check(word) ? MEMO_BAD_WORD : MEMO_OK;
+    }
 
-    var negAffData = loadDictionaryFile(baseTypoJsUrl + lang + "-neg.aff");
-    var negWordData = loadDictionaryFile(baseTypoJsUrl + lang + "-neg.dic");
-    negativeDictionary = new Typo(lang, negAffData, negWordData);
+    var language = currentLanguage;
+    var result = language.memo[word];
+    if (result !== undefined) {
+        ++memoHits;
+        return result;
+    }
 
-    var negPhraseWordData = loadDictionaryFile(baseTypoJsUrl + lang + "-negphrase.dic");
-    negativePhraseDictionary = new Typo(lang, negAffData, negPhraseWordData);
+    result = language.oldMemo[word];
+    if (result !== undefined) {
+        ++memoHits;
+    } else {
+        ++memoMisses;
+        if (negativePhraseDictionary.check(word)) {
+            result = MEMO_BAD_PHRASE;
+        } else if (negativeDictionary.check(word)) {
+            result = MEMO_BAD_WORD;
+        } else if (!positiveDictionary.check(word)) {
+            result = MEMO_MISSPELLED;
+        } else {
+            result = MEMO_OK;
+        }
+    }
+
+    if (language.memoSize == MAX_MEMO_GENERATION) {
+        language.oldMemo = language.memo;
+        language.oldMemoSize = language.memoSize;
+        language.memo = Object.create(null);
+        language.memoSize = 0;
+    }
+    language.memo[word] = result;
+    ++language.memoSize;
+    return result;
+}
+
+function init(lang, baseUrl, words, budget, elements, urls) {
+    defaultLanguage = lang;
+    setSkipElements(elements);
+    baseTypoJsUrl = baseUrl;
+    dictionaryUrls = Object.create(null);
+    for (var fileName in urls) {
+        dictionaryUrls[fileName] = urls[fileName];
+    }
+    dictionaryBudget = budget || DEFAULT_DICTIONARY_BUDGET;
+    updateCustomWords(words || [], true);
+
+    // Load the default language straight away, as it will almost certainly be used
+    selectLanguage(lang);
 
     postMessage({action: "init"});
 }
 
+// Make a language the current one, loading its dictionaries if needed.
+// Returns false if there are no dictionaries for the language.
+function selectLanguage(lang) {
+    var language = languages[lang];
+    if (language == null) {
+        language = loadLanguage(lang);
+    }
+
+    language.lastUsed = ++languageClock;
+
+    if (language.positive == null) {
+        return false;
+    }
+
+    if (currentLanguage !== language) {
+        currentLanguage = language;
+        positiveDictionary = language.positive;
+        negativeDictionary = language.negative;
+        negativePhraseDictionary = language.negativePhrase;
+    }
+
+    return true;
+}
+
+function loadLanguage(lang) {
+    var language = {lang: lang, size: 0, lastUsed: ++languageClock};
+    languages[lang] = language;
+
+    if (!LANGUAGE_CODE_RE.test(lang)) {
+        console.log("Spell checking language " + lang + " is not a language code. No dictionaries are loaded for it.");
+        return language;
+    }
+
+    var affData = loadDictionaryFile(dictionaryUrl(lang + ".aff"));
+    var wordData = affData == null ? null : loadDictionaryFile(dictionaryUrl(lang + ".dic"));
+    if (affData == null || wordData == null) {
+        // The language is remembered, so its dictionaries are not requested again
+        return language;
+    }
+
+    language.positive = new Typo(lang, affData, wordData);
+    for (var word in customWords) {
+        language.positive.addWord(word);
+    }
+
+    // Languages without negative dictionaries get empty ones. Typo.js tries to load any dictionary passed as an empty
+    // string itself, so a comment is passed instead.
+    var negAffData = loadDictionaryFile(dictionaryUrl(lang + "-neg.aff")) || EMPTY_DICTIONARY;
+    var negWordData = loadDictionaryFile(dictionaryUrl(lang + "-neg.dic")) || EMPTY_DICTIONARY;
+    language.negative = new Typo(lang, negAffData, negWordData);
+
+    var negPhraseWordData = loadDictionaryFile(dictionaryUrl(lang + "-negphrase.dic")) || EMPTY_DICTIONARY;
+    language.negativePhrase = new Typo(lang, negAffData, negPhraseWordData);
+
+    language.size = dictionarySize(language.positive) + dictionarySize(language.negative) +
+        dictionarySize(language.negativePhrase);
+    clearMemo(language);
+
+    evictLanguages(language);
+    return language;
+}
+
+// An estimate of the memory used by a packed dictionary. Strings take two bytes a character, and the typed arrays four
+// bytes an entry.
+function dictionarySize(dictionary) {
+    if (dictionary.packedWords == null) {
+        return 0;
+    }
+    return dictionary.packedWords.length * 2 + dictionary.packedOffsets.byteLength + dictionary.packedRuleSets.byteLength;
+}
+
+// Drop the least recently used languages until the dictionaries fit in the budget. The language that was just loaded
+// and the languages used by the check in progress are kept, even if that leaves the dictionaries over the budget.
+function evictLanguages(loadedLanguage) {
+    var total = 0;
+    for (var lang in languages) {
+        total += languages[lang].size;
+    }
+
+    while (total > dictionaryBudget) {
+        var leastRecentlyUsed = null;
+        for (var lang in languages) {
+            var language = languages[lang];
+            if (language !== loadedLanguage && language.size != 0 && language.lastUsed < checkStartedAt &&
+                (leastRecentlyUsed == null || language.lastUsed < leastRecentlyUsed.lastUsed)) {
+                leastRecentlyUsed = language;
+            }
+        }
+
+        if (leastRecentlyUsed == null) {
+            return;
+        }
+
+        total -= leastRecentlyUsed.size;
+        delete languages[leastRecentlyUsed.lang];
+        if (currentLanguage === leastRecentlyUsed) {
+            currentLanguage = positiveDictionary = negativeDictionary = negativePhraseDictionary = null;
+        }
+    }
+}
+
+// Returns the URL of a dictionary file
+function dictionaryUrl(fileName) {
+    return fileName in dictionaryUrls ? dictionaryUrls[fileName] : baseTypoJsUrl + fileName;
+}
+
+// Returns the contents of a file, or null if it could not be loaded
 function loadDictionaryFile(path) {
     var req = new XMLHttpRequest();
     req.open("GET", path, false);
-    req.send(null);
-    return req.responseText;
-}
-
-function suggest(word, limit) {
-    if (positiveDictionary == null) {
-        return;
+    try {
+        req.send(null);
+    } catch (ex) {
+        return null;
     }
+    // Files loaded from the file system have a status of 0
+    return req.status == 200 || (req.status == 0 && req.responseText) ? req.responseText : null;
+}
 
+function suggest(word, limit, row, column) {
     var suggestions;
     // Check the word isn't too long, as long words will take too long to process and can cause lock ups
-    if (word.length > 15) {
+    if (word.length > 15 || !selectLanguage(languageAt(row, column))) {
         suggestions = [];
     } else {
         suggestions = positiveDictionary.suggest(word, limit);
@@ -39,184 +283,571 @@ function suggest(word, limit) {
     postMessage({action: "suggest", suggestions: suggestions});
 }
 
-function spellCheck(lines) {
-    // Make sure the dictionaries have been loaded
-    if (positiveDictionary == null || negativeDictionary == null || negativePhraseDictionary == null) {
+// Returns the language of a position in the last document that was checked
+function languageAt(row, column) {
+    var segments = row == null ? null : lastLineSegments[row];
+    if (segments != null) {
+        for (var i = 0, segmentsLength = segments.length; i < segmentsLength; ++i) {
+            if (column < segments[i][1]) {
+                return segments[i][2];
+            }
+        }
+    }
+    return defaultLanguage;
+}
+
+function spellCheck(lines, lang) {
+    // Make sure the dictionaries have been initialised
+    if (defaultLanguage == null) {
         return;
     }
 
     if (lines) {
-        var retValue = [];
-        for (var lineIndex = 0, linesLength = lines.length; lineIndex < linesLength; ++lineIndex) {
-
-            var line = lines[lineIndex];
-
-            // remove all xml/html elements
-            var tagRe = /<.*?>/;
-            var tagMatch = null;
-            while ((tagMatch = line.match(tagRe)) != null) {
-                var tagLength = tagMatch[0].length;
-                var replacementString = "";
-                for (var i = 0; i < tagLength; ++i) {
-                    replacementString += " ";
+        checkStartedAt = languageClock + 1;
+        lastLineSegments = languageSegments(lines, lang || defaultLanguage);
+        var results = packResults(checkSegmentedLines(lines, lastLineSegments), null);
+        postMessage({action: "spellcheck", results: results, memo: takeMemoStatistics()}, [results.buffer]);
+    }
+}
+
+// Check some of the rows of a document again, after the custom dictionary has changed. The results are posted with
+// the rows they belong to. The document may have been edited since the last full check, so its segments are found
+// again, which is much cheaper than checking every line.
+function recheck(lines, rows, lang) {
+    if (defaultLanguage == null) {
+        return;
+    }
+
+    checkStartedAt = languageClock + 1;
+    lastLineSegments = languageSegments(lines, lang || defaultLanguage);
+    var rowLines = [];
+    var segments = [];
+    for (var i = 0, rowsLength = rows.length; i < rowsLength; ++i) {
+        rowLines.push(lines[rows[i]]);
+        segments.push(lastLineSegments[rows[i]]);
+    }
+
+    var results = packResults(checkSegmentedLines(rowLines, segments), rows);
+    postMessage({action: "recheck", rows: rows, results: results, memo: takeMemoStatistics()}, [results.buffer]);
+}
+
+// Pack the misspelled words, bad words and bad phrases of each line into [row, start, end, kind] entries. The row of
+// each line is taken from rows, or is its index if rows is null. Lines without results take no space.
+function packResults(lineData, rows) {
+    var count = 0;
+    for (var lineIndex = 0, linesLength = lineData.length; lineIndex < linesLength; ++lineIndex) {
+        count += lineData[lineIndex].misspelled.length + lineData[lineIndex].badWords.length +
+            lineData[lineIndex].badPhrases.length;
+    }
+
+    var results = new Int32Array(count * 4);
+    var index = 0;
+    var pack = function (row, ranges, kind) {
+        for (var i = 0, rangesLength = ranges.length; i < rangesLength; ++i) {
+            results[index++] = row;
+            results[index++] = ranges[i][0];
+            results[index++] = ranges[i][1];
+            results[index++] = kind;
+        }
+    };
+
+    for (var lineIndex = 0, linesLength = lineData.length; lineIndex < linesLength; ++lineIndex) {
+        var row = rows == null ? lineIndex : rows[lineIndex];
+        pack(row, lineData[lineIndex].misspelled, RESULT_MISSPELLED);
+        pack(row, lineData[lineIndex].badWords, RESULT_BAD_WORD);
+        pack(row, lineData[lineIndex].badPhrases, RESULT_BAD_PHRASE);
+    }
+
+    return results;
+}
+
+function takeMemoStatistics() {
+    var size = 0;
+    for (var lang in languages) {
+        if (languages[lang].positive != null) {
+            size += languages[lang].memoSize + languages[lang].oldMemoSize;
+        }
+    }
+
+    var statistics = {hits: memoHits, misses: memoMisses, size: size};
+    memoHits = memoMisses = 0;
+    return statistics;
+}
+
+// Matches the start of a start or end tag, capturing the slash of an end tag and the element name
+var TAG_START_RE = /<(\/?)([^\s\/>!?]+)/g;
+var LANG_ATTRIBUTE_RE = /\s(?:xml:)?lang\s*=\s*["']([^"']*)["']/;
+// The language codes dictionaries are loaded for, once "-" has been changed to "_". The code is part of the dictionary
+// URLs, so anything else found in a document (like a relative path) is ignored.
+var LANGUAGE_CODE_RE = /^[A-Za-z]{2,3}(_[A-Za-z0-9]{2,8})*$/;
+
+// The markup a position in the document is in. Text is checked unless it is inside a skipped element, and the other
+// regions are never checked.
+var REGION_TEXT = 0, REGION_TAG = 1, REGION_COMMENT = 2, REGION_CDATA = 3, REGION_INSTRUCTION = 4,
+    REGION_DECLARATION = 5;
+var REGION_STARTS = [null, null, "<!--", "<![CDATA[", "<?", "<!"];
+var REGION_ENDS = [null, ">", "-->", "]]>", "?>", ">"];
+
+// The content of these elements (code, commands and their output) is not spell checked, unless init is given a list of
+// its own
+var DEFAULT_SKIP_ELEMENTS = ["programlisting", "screen", "synopsis"];
+var skipElements = Object.create(null);
+
+function setSkipElements(elements) {
+    skipElements = Object.create(null);
+    elements = elements || DEFAULT_SKIP_ELEMENTS;
+    for (var i = 0, elementsLength = elements.length; i < elementsLength; ++i) {
+        skipElements[elements[i]] = true;
+    }
+}
+
+setSkipElements(null);
+
+// The lexical state at the start or end of a line: the region it is in, the open elements, and the tag that is being
+// read if the region is REGION_TAG. The open elements are an immutable linked list, so each line can keep the state it
+// started in without copying it.
+function lexicalState(region, open, tag) {
+    return {region: region, open: open, tag: tag};
+}
+
+var INITIAL_LEXICAL_STATE = lexicalState(REGION_TEXT, null, null);
+
+function sameLexicalState(a, b) {
+    if (a === b) {
+        return true;
+    }
+    if (a.region != b.region || (a.tag !== b.tag && (a.tag == null || b.tag == null || a.tag.name != b.tag.name ||
+        a.tag.close != b.tag.close || a.tag.attributes != b.tag.attributes))) {
+        return false;
+    }
+
+    var aOpen = a.open;
+    var bOpen = b.open;
+    while (aOpen !== bOpen) {
+        if (aOpen == null || bOpen == null || aOpen.name != bOpen.name || aOpen.lang != bOpen.lang ||
+            aOpen.skip != bOpen.skip) {
+            return false;
+        }
+        aOpen = aOpen.parent;
+        bOpen = bOpen.parent;
+    }
+    return true;
+}
+
+// Returns the open elements after a tag. Elements with a lang or xml:lang attribute change the language of their
+// content, and the content of skipped elements is not checked.
+function applyTag(open, tag, lang) {
+    if (tag.close) {
+        // Ignore end tags that don't match, rather than unwinding the whole document
+        return open != null && open.name == tag.name ? open.parent : open;
+    }
+    if (tag.empty) {
+        return open;
+    }
+
+    var langMatch = LANG_ATTRIBUTE_RE.exec(tag.attributes);
+    var tagLang = langMatch != null ? langMatch[1].replace(/-/g, "_") : null;
+    return {
+        parent: open,
+        name: tag.name,
+        lang: tagLang != null && LANGUAGE_CODE_RE.test(tagLang) ? tagLang : (open != null ? open.lang : lang),
+        skip: skipElements[tag.name] === true || (open != null && open.skip)
+    };
+}
+
+// Returns the [start, end, language] segments of a line that are checked, and the lexical state at its end. Comments,
+// CDATA sections, processing instructions, the parts of tags that span lines and the content of skipped elements are
+// left out. Tags on one line are left in, as checkLines() hides them.
+//
+// lineTags are the tags that open and close on the line, as found by parseTags() in conditional.js, if they have been
+// found already. A tag the scan reaches is taken from them rather than being read from the line again.
+function scanLine(line, state, lang, lineTags) {
+    var region = state.region;
+    var open = state.open;
+    var tag = state.tag;
+    var segments = [];
+    var lineLength = line.length;
+    var position = 0;
+    var tagIndex = 0;
+
+    var addText = function (start, end, textOpen) {
+        if (start >= end || (textOpen != null && textOpen.skip)) {
+            return;
+        }
+        var textLang = textOpen != null ? textOpen.lang : lang;
+        var last = segments.length != 0 ? segments[segments.length - 1] : null;
+        if (last != null && last[1] == start && last[2] == textLang) {
+            last[1] = end;
+        } else {
+            segments.push([start, end, textLang]);
+        }
+    };
+
+    while (position < lineLength) {
+        if (region != REGION_TEXT) {
+            var regionEnd = line.indexOf(REGION_ENDS[region], position);
+            if (regionEnd == -1) {
+                if (region == REGION_TAG) {
+                    tag = {name: tag.name, close: tag.close, attributes: tag.attributes + " " + line.substring(position)};
                 }
-                line = line.replace(tagRe, replacementString);
+                break;
             }
 
-            // remove all xml/html entities
-            var entityRe = /&.*?;/;
-            var entityMatch = null;
-            while ((entityMatch = line.match(entityRe)) != null) {
-                var entityLength = entityMatch[0].length;
-                var replacementString = "";
-                for (var i = 0; i < entityLength; ++i) {
-                    replacementString += " ";
-                }
-                line = line.replace(entityRe, replacementString);
+            position = regionEnd + REGION_ENDS[region].length;
+            if (region == REGION_TAG) {
+                // The tag may belong to the state a line started in, so it is not changed
+                open = applyTag(open, {
+                    name: tag.name,
+                    close: tag.close,
+                    empty: line.charAt(regionEnd - 1) == "/",
+                    attributes: tag.attributes + " " + line.substring(0, regionEnd)
+                }, lang);
+                tag = null;
             }
+            region = REGION_TEXT;
+            continue;
+        }
 
-            // remove all urls
-            var urlRe = /\b((?:https?:\/\/|www\d{0,3}[.]|[a-z0-9.\-]+[.][a-z]{2,4}\/)(?:[^\s()<>]+|\(([^\s()<>]+|(\([^\s()<>]+\)))*\))+(?:\(([^\s()<>]+|(\([^\s()<>]+\)))*\)|[^\s`!()\[\]{};:'".,<>?«»“”‘’]))/i;
-            var urlMatch = null;
-            while ((urlMatch = line.match(urlRe)) != null) {
-                var urlLength = urlMatch[0].length;
-                var replacementString = "";
-                for (var i = 0; i < urlLength; ++i) {
-                    replacementString += " ";
+        var markupStart = line.indexOf("<", position);
+        if (markupStart == -1) {
+            addText(position, lineLength, open);
+            break;
+        }
+        addText(position, markupStart, open);
+
+        var markupRegion = markupRegionAt(line, markupStart);
+        if (markupRegion != REGION_TEXT) {
+            region = markupRegion;
+            position = markupStart + REGION_STARTS[markupRegion].length;
+        } else {
+            // parseTags() finds the same tags in the text, as anything it matches inside a comment or other region
+            // ends by the end of the region
+            if (lineTags != null) {
+                while (tagIndex < lineTags.length && lineTags[tagIndex].start < markupStart) {
+                    ++tagIndex;
                 }
-                line = line.replace(urlRe, replacementString);
+                var lineTag = tagIndex < lineTags.length && lineTags[tagIndex].start == markupStart ?
+                    lineTags[tagIndex] : null;
+                if (lineTag != null) {
+                    var parsedOpen = applyTag(open, lineTag, lang);
+                    addText(markupStart, lineTag.end, parsedOpen != null && parsedOpen.skip ? open : parsedOpen);
+                    open = parsedOpen;
+                    position = lineTag.end;
+                    continue;
+                }
+            }
+
+            // A < in the text, or a tag that continues on the next line
+            TAG_START_RE.lastIndex = markupStart;
+            var tagMatch = TAG_START_RE.exec(line);
+            if (tagMatch == null || tagMatch.index != markupStart) {
+                // A < in the text
+                addText(markupStart, markupStart + 1, open);
+                position = markupStart + 1;
+                continue;
+            }
+
+            var nameEnd = markupStart + tagMatch[0].length;
+            var tagEnd = line.indexOf(">", nameEnd);
+            if (tagEnd == -1) {
+                // The tag continues on the next line
+                region = REGION_TAG;
+                tag = {name: tagMatch[2], close: tagMatch[1] == "/", attributes: line.substring(nameEnd)};
+                break;
+            }
+
+            var newOpen = applyTag(open, {
+                name: tagMatch[2],
+                close: tagMatch[1] == "/",
+                empty: line.charAt(tagEnd - 1) == "/",
+                attributes: line.substring(nameEnd, tagEnd)
+            }, lang);
+
+            // checkLines() hides the tag, so it goes with the text after it, or with the text before it if the
+            // content of the element is skipped
+            addText(markupStart, tagEnd + 1, newOpen != null && newOpen.skip ? open : newOpen);
+            open = newOpen;
+            position = tagEnd + 1;
+        }
+    }
+
+    return {segments: segments, state: lexicalState(region, open, tag)};
+}
+
+// Returns the region of the comment, CDATA section, processing instruction or declaration (such as a DOCTYPE) that
+// starts at a position, or REGION_TEXT if there is none
+function markupRegionAt(line, position) {
+    if (line.charAt(position + 1) == "?") {
+        return REGION_INSTRUCTION;
+    }
+    if (line.charAt(position + 1) != "!") {
+        return REGION_TEXT;
+    }
+    if (line.substr(position, 4) == REGION_STARTS[REGION_COMMENT]) {
+        return REGION_COMMENT;
+    }
+    if (line.substr(position, 9) == REGION_STARTS[REGION_CDATA]) {
+        return REGION_CDATA;
+    }
+    return REGION_DECLARATION;
+}
+
+// Returns the checked segments of each line, by following the lexical state from the start of the document. The text
+// outside of any element with a lang or xml:lang attribute is in lang. Language codes like en-US are changed to match
+// the dictionary names (en_US).
+function languageSegments(lines, lang) {
+    var state = INITIAL_LEXICAL_STATE;
+    var retValue = [];
+    for (var lineIndex = 0, linesLength = lines.length; lineIndex < linesLength; ++lineIndex) {
+        var scanned = scanLine(lines[lineIndex], state, lang);
+        retValue.push(scanned.segments);
+        state = scanned.state;
+    }
+    return retValue;
+}
+
+// Check each line in the languages of its segments. The text of each language is checked once, with the rest of the
+// line hidden so the columns of the results are unchanged.
+function checkSegmentedLines(lines, segments) {
+    var retValue = [];
+    for (var lineIndex = 0, linesLength = lines.length; lineIndex < linesLength; ++lineIndex) {
+        var line = lines[lineIndex];
+        var lineSegments = segments[lineIndex];
+
+        if (lineSegments.length == 1 && lineSegments[0][0] == 0 && lineSegments[0][1] == line.length) {
+            retValue.push(checkLanguage(lineSegments[0][2], line));
+            continue;
+        }
+
+        var lineData = {misspelled: [], badWords: [], badPhrases: []};
+        var checkedLanguages = Object.create(null);
+        for (var i = 0, segmentsLength = lineSegments.length; i < segmentsLength; ++i) {
+            var lang = lineSegments[i][2];
+            if (checkedLanguages[lang]) {
+                continue;
             }
+            checkedLanguages[lang] = true;
 
-            // remove all numbers
-            var numberRe = /\b\d+\b/;
-            var numberMatch = null;
-            while ((numberMatch = line.match(numberRe)) != null) {
-                var numberLength = numberMatch[0].length;
-                var replacementString = "";
-                for (var i = 0; i < numberLength; ++i) {
-                    replacementString += " ";
+            var text = "";
+            for (var j = i; j < segmentsLength; ++j) {
+                if (lineSegments[j][2] == lang) {
+                    text += blank(lineSegments[j][0] - text.length) + line.substring(lineSegments[j][0], lineSegments[j][1]);
                 }
-                line = line.replace(numberRe, replacementString);
             }
 
-            // replace any character that doesn't make up a word with a space, and then split on space
-            var phraseWords = line.split(/\s/);
-            var words = line.replace(/[^a-zA-Z0-9'\\-]/g, ' ').split(/\s/);
+            var segmentData = checkLanguage(lang, text + blank(line.length - text.length));
+            lineData.misspelled = lineData.misspelled.concat(segmentData.misspelled);
+            lineData.badWords = lineData.badWords.concat(segmentData.badWords);
+            lineData.badPhrases = lineData.badPhrases.concat(segmentData.badPhrases);
+        }
+        retValue.push(lineData);
+    }
+    return retValue;
+}
 
-            var misspelled = [];
-            var badWords = [];
-            var badPhrases = [];
-            var testedWords = [];
+// Check a line against the dictionaries of a language. Nothing is reported for languages without dictionaries.
+function checkLanguage(lang, line) {
+    if (!selectLanguage(lang)) {
+        return {misspelled: [], badWords: [], badPhrases: []};
+    }
+    return checkLines([line])[0];
+}
 
-            for (var wordIndex = 0, wordCount = phraseWords.length; wordIndex < wordCount; ++wordIndex) {
-                testedWords.push(false);
+function blank(length) {
+    var replacementString = "";
+    for (var i = 0; i < length; ++i) {
+        replacementString += " ";
+    }
+    return replacementString;
+}
+
+// Returns the misspelled words, bad words and bad phrases of each line
+function checkLines(lines) {
+    var retValue = [];
+    for (var lineIndex = 0, linesLength = lines.length; lineIndex < linesLength; ++lineIndex) {
+
+        var line = lines[lineIndex];
+
+        // remove all xml/html elements
+        var tagRe = /<.*?>/;
+        var tagMatch = null;
+        while ((tagMatch = line.match(tagRe)) != null) {
+            var tagLength = tagMatch[0].length;
+            var replacementString = "";
+            for (var i = 0; i < tagLength; ++i) {
+                replacementString += " ";
             }
+            line = line.replace(tagRe, replacementString);
+        }
 
-            // How many words can appear in a phrase that will be checked against
-            // the dictionaries
-            var maxWordsInPhrase = 7;
+        // remove all xml/html entities
+        var entityRe = /&.*?;/;
+        var entityMatch = null;
+        while ((entityMatch = line.match(entityRe)) != null) {
+            var entityLength = entityMatch[0].length;
+            var replacementString = "";
+            for (var i = 0; i < entityLength; ++i) {
+                replacementString += " ";
+            }
+            line = line.replace(entityRe, replacementString);
+        }
 
-            outerloop:
-                for (var wordGroupIndex = maxWordsInPhrase; wordGroupIndex > 0; --wordGroupIndex) {
-                    var i = 0;
+        // remove all urls
+        var urlRe = /\b((?:https?:\/\/|www\d{0,3}[.]|[a-z0-9.\-]+[.][a-z]{2,4}\/)(?:[^\s()<>]+|\(([^\s()<>]+|(\([^\s()<>]+\)))*\))+(?:\(([^\s()<>]+|(\([^\s()<>]+\)))*\)|[^\s`!()\[\]{};:'".,<>?«»“”‘’]))/i;
+        var urlMatch = null;
+        while ((urlMatch = line.match(urlRe)) != null) {
+            var urlLength = urlMatch[0].length;
+            var replacementString = "";
+            for (var i = 0; i < urlLength; ++i) {
+                replacementString += " ";
+            }
+            line = line.replace(urlRe, replacementString);
+        }
 
-                    // When checking single words, use the words array. Otherwise use the phraseWords array.
-                    var checkArray = wordGroupIndex == 1 ? words : phraseWords;
+        // remove all numbers
+        var numberRe = /\b\d+\b/;
+        var numberMatch = null;
+        while ((numberMatch = line.match(numberRe)) != null) {
+            var numberLength = numberMatch[0].length;
+            var replacementString = "";
+            for (var i = 0; i < numberLength; ++i) {
+                replacementString += " ";
+            }
+            line = line.replace(numberRe, replacementString);
+        }
 
-                    var lastCheckedWord = 0;
+        // replace any character that doesn't make up a word with a space, and then split on space
+        var phraseWords = line.split(/\s/);
+        var words = line.replace(/[^a-zA-Z0-9'\\-]/g, ' ').split(/\s/);
 
-                    innerloop:
-                        for (var wordIndex = 0, wordCount = checkArray.length - wordGroupIndex + 1; wordIndex < wordCount; ++wordIndex) {
+        var misspelled = [];
+        var badWords = [];
+        var badPhrases = [];
+        var testedWords = [];
 
-                            // do this here so the continues down below don't stop us incrementing the value
-                            var firstWordLengthWithSpace = checkArray[wordIndex].length + 1;
-                            i += firstWordLengthWithSpace;
+        for (var wordIndex = 0, wordCount = phraseWords.length; wordIndex < wordCount; ++wordIndex) {
+            testedWords.push(false);
+        }
 
-                            if (wordIndex < lastCheckedWord) {
-                                continue;
-                            }
+        // How many words can appear in a phrase that will be checked against
+        // the dictionaries
+        var maxWordsInPhrase = 7;
 
-                            var checkWord = "";
+        outerloop:
+            for (var wordGroupIndex = maxWordsInPhrase; wordGroupIndex > 0; --wordGroupIndex) {
+                var i = 0;
 
-                            for (var checkWordIndex = wordIndex, checkWordIndexMax = wordIndex + wordGroupIndex; checkWordIndex < checkWordIndexMax; ++checkWordIndex) {
+                // When checking single words, use the words array. Otherwise use the phraseWords array.
+                var checkArray = wordGroupIndex == 1 ? words : phraseWords;
 
-                                if (testedWords[checkWordIndex]) {
-                                    continue innerloop;
-                                }
+                var lastCheckedWord = 0;
 
-                                if (checkArray[checkWordIndex].length == 0) {
-                                    continue innerloop;
-                                }
+                innerloop:
+                    for (var wordIndex = 0, wordCount = checkArray.length - wordGroupIndex + 1; wordIndex < wordCount; ++wordIndex) {
 
-                                if (checkWordIndex != wordIndex) {
-                                    checkWord += " ";
-                                }
-                                checkWord += checkArray[checkWordIndex];
+                        // do this here so the continues down below don't stop us incrementing the value
+                        var firstWordLengthWithSpace = checkArray[wordIndex].length + 1;
+                        i += firstWordLengthWithSpace;
+
+                        if (wordIndex < lastCheckedWord) {
+                            continue;
+                        }
+
+                        var checkWord = "";
+
+                        for (var checkWordIndex = wordIndex, checkWordIndexMax = wordIndex + wordGroupIndex; checkWordIndex < checkWordIndexMax; ++checkWordIndex) {
+
+                            if (testedWords[checkWordIndex]) {
+                                continue innerloop;
                             }
 
-                            // skip non word characters at the start and end of the word or phrase
-                            var match = checkWord.match(/^[^a-zA-Z0-9]+/);
-                            var startingWhitespace = match != null ? match[0].length : 0;
-
-                            var endMatch = checkWord.match(/[^a-zA-Z0-9]+$/);
-                            var endingWhitespace = endMatch != null ? endMatch[0].length : 0;
-
-                            // subtract firstWordLengthWithSpace to account for the fact that it was added
-                            // at the start of the loop
-                            var start = i + startingWhitespace - firstWordLengthWithSpace;
-                            var end = i + checkWord.length - firstWordLengthWithSpace - endingWhitespace;
-
-                            if (start < end && checkWord.trim().length != 0) {
-
-                                var wordConsumed = false;
-
-                                if (negativePhraseDictionary != null && negativePhraseDictionary.check(checkWord.trim())) {
-                                    wordConsumed = true;
-                                    badPhrases[badPhrases.length] = [start, end];
-                                } else if (negativeDictionary != null && negativeDictionary.check(checkWord.trim())) {
-                                    wordConsumed = true;
-                                    badWords[badWords.length] = [start, end];
-                                } else if (wordGroupIndex == 1) {
-                                    // check for double words
-                                    if (wordIndex < wordCount - 1 && checkArray[wordIndex + 1] == checkWord) {
-                                        // don't test the next word
-                                        testedWords[wordIndex] = testedWords[wordIndex + 1] = true;
-                                        // this is a bad phrase
-                                        badPhrases[badPhrases.length] = [start, end + checkArray[wordIndex + 1].length + 1];
-                                    } else if (!positiveDictionary.check(checkWord.trim())) {
-                                        misspelled[misspelled.length] = [start, end];
-                                    }
-                                }
+                            if (checkArray[checkWordIndex].length == 0) {
+                                continue innerloop;
+                            }
 
-                                if (wordConsumed) {
-                                    // Words will only fall into one dictionary item. Here we make sure that any words in this negative
-                                    // match don't get used again.
-                                    for (var checkWordIndex = wordIndex, checkWordIndexMax = wordIndex + wordGroupIndex; checkWordIndex < checkWordIndexMax; ++checkWordIndex) {
-                                        testedWords[checkWordIndex] = true;
-                                    }
+                            if (checkWordIndex != wordIndex) {
+                                checkWord += " ";
+                            }
+                            checkWord += checkArray[checkWordIndex];
+                        }
 
-                                    lastCheckedWord = wordIndex + wordGroupIndex;
+                        // skip non word characters at the start and end of the word or phrase
+                        var match = checkWord.match(/^[^a-zA-Z0-9]+/);
+                        var startingWhitespace = match != null ? match[0].length : 0;
+
+                        var endMatch = checkWord.match(/[^a-zA-Z0-9]+$/);
+                        var endingWhitespace = endMatch != null ? endMatch[0].length : 0;
+
+                        // subtract firstWordLengthWithSpace to account for the fact that it was added
+                        // at the start of the loop
+                        var start = i + startingWhitespace - firstWordLengthWithSpace;
+                        var end = i + checkWord.length - firstWordLengthWithSpace - endingWhitespace;
+
+                        if (start < end && checkWord.trim().length != 0) {
+
+                            var wordConsumed = false;
+                            var classification = classify(checkWord.trim());
+
+                            if (classification == MEMO_BAD_PHRASE) {
+                                wordConsumed = true;
+                                badPhrases[badPhrases.length] = [start, end];
+                            } else if (classification == MEMO_BAD_WORD) {
+                                wordConsumed = true;
+                                badWords[badWords.length] = [start, end];
+                            } else if (wordGroupIndex == 1) {
+                                // check for double words
+                                if (wordIndex < wordCount - 1 && checkArray[wordIndex + 1] == checkWord) {
+                                    // don't test the next word
+                                    testedWords[wordIndex] = testedWords[wordIndex + 1] = true;
+                                    // this is a bad phrase
+                                    badPhrases[badPhrases.length] = [start, end + checkArray[wordIndex + 1].length + 1];
+                                } else if (classification == MEMO_MISSPELLED) {
+                                    misspelled[misspelled.length] = [start, end];
                                 }
                             }
-                        }
-                }
 
-            retValue.push({misspelled: misspelled, badWords: badWords, badPhrases: badPhrases});
-        }
+                            if (wordConsumed) {
+                                // Words will only fall into one dictionary item. Here we make sure that any words in this negative
+                                // match don't get used again.
+                                for (var checkWordIndex = wordIndex, checkWordIndexMax = wordIndex + wordGroupIndex; checkWordIndex < checkWordIndexMax; ++checkWordIndex) {
+                                    testedWords[checkWordIndex] = true;
+                                }
 
-        postMessage({action: "spellcheck", lineData: retValue});
+                                lastCheckedWord = wordIndex + wordGroupIndex;
+                            }
+                        }
+                    }
+            }
+
+        retValue.push({misspelled: misspelled, badWords: badWords, badPhrases: badPhrases});
     }
+
+    return retValue;
 }
 
 // Check the spelling of a line, and return [start, end]-pairs for misspelled words.
-self.addEventListener('message', function (e) {
-    var action = e.data.action;
+function handleSpellingMessage(data) {
+    var action = data.action;
 
     if (action == "init") {
-        init(e.data.lang, e.data.baseTypoJsUrl);
+        init(data.lang, data.baseTypoJsUrl, data.customWords, data.dictionaryBudget, data.skipElements,
+            data.dictionaryUrls);
     } else if (action == "spellcheck") {
-        spellCheck(e.data.lines);
+        spellCheck(data.lines, data.lang);
+    } else if (action == "recheck") {
+        recheck(data.lines, data.rows, data.lang);
+    } else if (action == "addWords") {
+        updateCustomWords(data.words, true);
+    } else if (action == "removeWords") {
+        updateCustomWords(data.words, false);
     } else if (action == "suggest") {
-        suggest(e.data.word, e.data.limit);
+        suggest(data.word, data.limit, data.row, data.column);
     }
-});
\ No newline at end of file
+}
+
+// The fused analysis worker (analysis.js) includes this script and passes it the messages
+if (typeof fusedAnalysisWorker === "undefined") {
+    self.addEventListener('message', function (e) {
+        handleSpellingMessage(e.data);
+    });
+}
\ No newline at end of file
@@ -28,6 +28,8 @@
  *                            {String} [path]: path to load dictionary from in non-chrome
  *                              environment.
  *                            {Object} [flags]: flag information.
+ *                            {Boolean} [compact]: false to keep the words in a
+ *                              plain object (see _packDictionary()). Defaults to true.
  *
  *
  * @returns {Typo} A Typo object.
@@ -44,6 +46,14 @@ var Typo = function (dictionary, affData, wordsData, settings) {
 	this.rules = {};
 	this.dictionaryTable = {};
 
+	this.packedWords = null;
+	this.packedOffsets = null;
+	this.packedRuleSets = null;
+	this.ruleSets = [];
+
+	/** Words added with addWord(), which are not affected by the affix rules. **/
+	this.addedWords = Object.create(null);
+
 	this.compoundRules = [];
 	this.compoundRuleCodes = {};
 
@@ -85,6 +95,11 @@ var Typo = function (dictionary, affData, wordsData, settings) {
 
 		this.dictionaryTable = this._parseDIC(wordsData);
 
+		if (settings.compact !== false) {
+			this._packDictionary(this.dictionaryTable);
+			this.dictionaryTable = null;
+		}
+
 		// Get rid of any codes from the compound rule codes that are never used 
 		// (or that were special regex characters).  Not especially necessary... 
 		for (var i in this.compoundRuleCodes) {
@@ -123,6 +138,9 @@ Typo.prototype = {
 	/**
 	 * Loads a Typo instance from a hash of all of the Typo properties.
 	 *
+	 * The packed dictionary does not survive a round trip through JSON, so instances that will be serialized this
+	 * way need to be created with the compact setting set to false.
+	 *
 	 * @param object obj A hash of Typo properties, probably gotten from a JSON.parse(JSON.stringify(typo_instance)).
 	 */
 
@@ -374,6 +392,107 @@ Typo.prototype = {
 	},
 
 
+	/**
+	 * Packs the table returned by _parseDIC() into a sorted string table. An object with a property (and an array of
+	 * rule code arrays) for every expanded word takes tens of megabytes for en_US. Instead every word is stored, in
+	 * sorted order, in one string, with the offset of each word in a typed array. Most words share one of a small
+	 * number of distinct rule code arrays, so each word just holds the index of its rule codes in this.ruleSets.
+	 * _lookup() finds a word with a binary search, and returns the same rule codes the table held.
+	 *
+	 * @param {Object} dictionaryTable The words and their rule codes.
+	 */
+
+	_packDictionary : function (dictionaryTable) {
+		var words = Object.keys(dictionaryTable).sort();
+		var offsets = new Uint32Array(words.length + 1);
+		var ruleSetIndexes = new Uint32Array(words.length);
+		var ruleSets = [];
+		var ruleSetIndexesByKey = Object.create(null);
+		var offset = 0;
+
+		for (var i = 0, _len = words.length; i < _len; i++) {
+			var ruleCodes = dictionaryTable[words[i]];
+			var key = JSON.stringify(ruleCodes);
+			var ruleSetIndex = ruleSetIndexesByKey[key];
+
+			if (typeof ruleSetIndex === 'undefined') {
+				ruleSetIndex = ruleSetIndexesByKey[key] = ruleSets.length;
+				ruleSets.push(ruleCodes);
+			}
+
+			offsets[i] = offset;
+			ruleSetIndexes[i] = ruleSetIndex;
+			offset += words[i].length;
+		}
+
+		offsets[words.length] = offset;
+
+		this.packedWords = words.join("");
+		this.packedOffsets = offsets;
+		this.packedRuleSets = ruleSetIndexes;
+		this.ruleSets = ruleSets;
+	},
+
+	/**
+	 * Looks up the rule codes of a word.
+	 *
+	 * @param {String} word The word to look up.
+	 * @returns {Array} The rule codes of each dictionary entry for the word, or undefined if it is not in the dictionary.
+	 */
+
+	_lookup : function (word) {
+		if (this.dictionaryTable) {
+			return this.dictionaryTable[word] || this.addedWords[word];
+		}
+
+		if (!this.packedOffsets) {
+			return this.addedWords[word];
+		}
+
+		var words = this.packedWords;
+		var offsets = this.packedOffsets;
+		var low = 0;
+		var high = offsets.length - 2;
+
+		while (low <= high) {
+			var middle = (low + high) >>> 1;
+			var candidate = words.substring(offsets[middle], offsets[middle + 1]);
+
+			if (candidate < word) {
+				low = middle + 1;
+			}
+			else if (candidate > word) {
+				high = middle - 1;
+			}
+			else {
+				return this.ruleSets[this.packedRuleSets[middle]];
+			}
+		}
+
+		return this.addedWords[word];
+	},
+
+	/**
+	 * Adds a word to the dictionary, without reparsing it. The word is accepted in the same capitalizations as a
+	 * dictionary word with no flags, so adding "jboss" also accepts "Jboss" and "JBOSS".
+	 *
+	 * @param {String} word The word to add.
+	 */
+
+	addWord : function (word) {
+		this.addedWords[word] = [[]];
+	},
+
+	/**
+	 * Removes a word that was added with addWord(). Words from the .dic file can not be removed.
+	 *
+	 * @param {String} word The word to remove.
+	 */
+
+	removeWord : function (word) {
+		delete this.addedWords[word];
+	},
+
 	/**
 	 * Removes comment lines and then cleans up blank lines and trailing whitespace.
 	 *
@@ -534,7 +653,7 @@ Typo.prototype = {
 	 */
 
 	checkExact : function (word) {
-		var ruleCodes = this.dictionaryTable[word];
+		var ruleCodes = this._lookup(word);
 
 		if (typeof ruleCodes === 'undefined') {
 			// Check if this might be a compound word.
@@ -570,7 +689,7 @@ Typo.prototype = {
 	hasFlag : function (word, flag, wordFlags) {
 		if (flag in this.flags) {
 			if (typeof wordFlags === 'undefined') {
-				var wordFlags = Array.prototype.concat.apply([], this.dictionaryTable[word]);
+				var wordFlags = Array.prototype.concat.apply([], this._lookup(word));
 			}
 
 			if (wordFlags && wordFlags.indexOf(this.flags[flag]) !== -1) {